@@ -0,0 +1,104 @@
+package com.android.phasebeam;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+// CPU-side assets shared by every engine of the service, so the picker preview and the home and lock screen
+// instances read shaders, decode the atlas and map scenes once. Each renderer holds a reference for its
+// lifetime and the last one to let go drops everything
+public class AssetCache
+{
+    private static final String TAG = "AssetCache";
+
+    // Everything PhaseBeamRenderer reads ahead of the first frame
+    private static final int[] SHADER_RESOURCE_IDS = {
+            R.raw.bg_vs, R.raw.bg_fs, R.raw.dot_vs, R.raw.dot_fs, R.raw.sprite_fs, R.raw.blit_vs, R.raw.blit_fs
+    };
+    private static final int[] SPRITE_RESOURCE_IDS = {R.drawable.dot, R.drawable.beam};
+
+    //region Cached assets, guarded by this
+        private final Context context;
+        private final HashMap<String, PackedScene> scenes = new HashMap<String, PackedScene>();
+        private AssetPreloader preloader;
+        private int references;
+    //endregion
+
+    public AssetCache(Context context)
+    {
+        this.context = context;
+    }
+
+    // The first reference starts preloading in the background
+    public synchronized void acquire()
+    {
+        if (references++ == 0)
+        {
+            preloader = new AssetPreloader(context, SHADER_RESOURCE_IDS, SPRITE_RESOURCE_IDS,
+                    PhaseBeamRenderer.ATLAS_TILE_SIZE, PhaseBeamRenderer.PARTICLE_ATLAS_ASSET);
+            preloader.start();
+        }
+    }
+
+    public synchronized void release()
+    {
+        if (references == 0)
+        {
+            return;
+        }
+
+        if (--references == 0)
+        {
+            Log.d(TAG, "last engine gone, dropping " + scenes.size() + " scenes and the preloaded assets");
+
+            preloader.cancel();
+            preloader = null;
+            scenes.clear();
+        }
+    }
+
+    // The scenes stay, renderers keep reading their mappings
+    public synchronized void trimMemory()
+    {
+        if (preloader != null)
+        {
+            Log.d(TAG, "trimming " + preloader.getCpuBytes() + "B of preloaded assets");
+            preloader.trim();
+        }
+    }
+
+    public synchronized long getCpuBytes()
+    {
+        return preloader != null ? preloader.getCpuBytes() : 0;
+    }
+
+    // Only valid while holding a reference
+    public synchronized AssetPreloader getPreloader()
+    {
+        return preloader;
+    }
+
+    // Maps the scene on first use and checks its header, the rest is read when the particles and background ask for it
+    public synchronized PackedScene getScene(String sceneAsset)
+    {
+        PackedScene scene = scenes.get(sceneAsset);
+
+        if (scene == null)
+        {
+            try
+            {
+                scene = PackedScene.read(MappedAssets.map(context.getAssets(), sceneAsset));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Failed to load scene " + sceneAsset + ": " + e.getMessage());
+            }
+
+            scenes.put(sceneAsset, scene);
+        }
+
+        return scene;
+    }
+}
@@ -0,0 +1,277 @@
+package com.android.phasebeam;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Reads shader sources and prepares the sprite atlas on background threads while the engine starts,
+// so the GL thread only has to upload. Anything that failed to preload is loaded on the GL thread instead
+public class AssetPreloader
+{
+    private static final String TAG = "AssetPreloader";
+
+    // Shader reads are tiny, more threads than this only add start-up cost
+    private static final int MAX_THREADS = 2;
+
+    //region Preload data
+        private final Resources resources;
+        private final AssetManager assets;
+        private final int[] shaderResourceIds;
+        private final int[] spriteResourceIds;
+        private final int tileSize;
+        private final String compressedAtlasAsset;
+        private final ConcurrentHashMap<Integer, String> shaderSources = new ConcurrentHashMap<Integer, String>();
+        private final AtomicInteger pendingTasks = new AtomicInteger();
+        private volatile ByteBuffer atlasPixels;
+        private volatile ByteBuffer compressedAtlas;
+        private ExecutorService executor;
+    //endregion
+
+    public AssetPreloader(Context context, int[] shaderResourceIds, int[] spriteResourceIds, int tileSize,
+                          String compressedAtlasAsset)
+    {
+        this.resources = context.getResources();
+        this.assets = context.getAssets();
+        this.shaderResourceIds = shaderResourceIds;
+        this.spriteResourceIds = spriteResourceIds;
+        this.tileSize = tileSize;
+        this.compressedAtlasAsset = compressedAtlasAsset;
+    }
+
+    // Call once, the worker threads exit on their own when everything is loaded
+    public void start()
+    {
+        pendingTasks.set(shaderResourceIds.length + 2);
+
+        executor = Executors.newFixedThreadPool(MAX_THREADS, new ThreadFactory()
+        {
+            private int threadCount;
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "PhaseBeamPreload-" + threadCount++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // The atlas goes first, decoding the PNGs takes longer than all the shaders together
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    atlasPixels = decodeAtlas(resources, tileSize, spriteResourceIds);
+                }
+                catch (RuntimeException e)
+                {
+                    Log.d(TAG, "atlas decode failed: " + e.getMessage());
+                }
+                finally
+                {
+                    pendingTasks.decrementAndGet();
+                }
+            }
+        });
+
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    // Faults the pages in here rather than during the upload
+                    MappedByteBuffer ktx = MappedAssets.map(assets, compressedAtlasAsset);
+                    ktx.load();
+                    compressedAtlas = ktx;
+                }
+                catch (IOException e)
+                {
+                    Log.d(TAG, "compressed atlas unavailable: " + e.getMessage());
+                }
+                finally
+                {
+                    pendingTasks.decrementAndGet();
+                }
+            }
+        });
+
+        for (final int resourceId : shaderResourceIds)
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        shaderSources.put(resourceId, readShaderSource(resources, resourceId));
+                    }
+                    catch (RuntimeException e)
+                    {
+                        Log.d(TAG, "shader preload failed: " + e.getMessage());
+                    }
+                    finally
+                    {
+                        pendingTasks.decrementAndGet();
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+    }
+
+    // Drops whatever hasn't started yet when the engine goes away before the first frame
+    public void cancel()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    // Safe to poll every frame, never blocks
+    public boolean isDone()
+    {
+        return pendingTasks.get() <= 0;
+    }
+
+    // Null when the source wasn't preloaded or failed to
+    public String getShaderSource(int resourceId)
+    {
+        return shaderSources.get(resourceId);
+    }
+
+    // RGBA rows of the atlas, tileSize high and one tile wide per sprite. Several render threads may upload
+    // at once, so every caller gets its own view with its own position
+    public ByteBuffer getAtlasPixels()
+    {
+        ByteBuffer pixels = atlasPixels;
+        return pixels != null ? pixels.duplicate() : null;
+    }
+
+    public ByteBuffer getCompressedAtlas()
+    {
+        ByteBuffer ktx = compressedAtlas;
+        return ktx != null ? ktx.duplicate() : null;
+    }
+
+    // Renderers fall back to reading and decoding on the GL thread, dropped mappings are unmapped by the GC
+    public void trim()
+    {
+        shaderSources.clear();
+        atlasPixels = null;
+        compressedAtlas = null;
+    }
+
+    // Heap and direct memory held for renderers still to come, the mapped atlas is file-backed and not counted
+    public long getCpuBytes()
+    {
+        ByteBuffer pixels = atlasPixels;
+        long bytes = pixels != null ? pixels.capacity() : 0;
+
+        for (String source : shaderSources.values())
+        {
+            bytes += source.length() * 2L;
+        }
+
+        return bytes;
+    }
+
+    public int getAtlasWidth()
+    {
+        return tileSize * spriteResourceIds.length;
+    }
+
+    public int getAtlasHeight()
+    {
+        return tileSize;
+    }
+
+    public static String readShaderSource(Resources resources, int resourceId)
+    {
+        InputStream inputStream = resources.openRawResource(resourceId);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+        StringBuilder shaderSource = new StringBuilder();
+
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                shaderSource.append(line).append("\n");
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Failed to read shader source: " + e.getMessage());
+        }
+        finally
+        {
+            try
+            {
+                inputStream.close();
+            }
+            catch (IOException ignored) {}
+        }
+
+        return shaderSource.toString();
+    }
+
+    // Packs the sprites next to each other, scaled to one tile each, as premultiplied RGBA for glTexImage2D
+    public static ByteBuffer decodeAtlas(Resources resources, int tileSize, int... resourceIds)
+    {
+        final Bitmap atlas = Bitmap.createBitmap(tileSize * resourceIds.length, tileSize, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(atlas);
+        final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false; // No pre-scaling
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+        for (int i = 0; i < resourceIds.length; i++)
+        {
+            final Bitmap bitmap = BitmapFactory.decodeResource(resources, resourceIds[i], options);
+
+            if (bitmap == null)
+            {
+                atlas.recycle();
+                throw new RuntimeException("Failed to decode sprite " + resourceIds[i]);
+            }
+
+            canvas.drawBitmap(bitmap, null, new Rect(i * tileSize, 0, (i + 1) * tileSize, tileSize), paint);
+            bitmap.recycle();
+        }
+
+        ByteBuffer pixels = ByteBuffer.allocateDirect(atlas.getWidth() * atlas.getHeight() * 4).order(ByteOrder.nativeOrder());
+        atlas.copyPixelsToBuffer(pixels);
+        pixels.position(0);
+        atlas.recycle();
+
+        return pixels;
+    }
+}
@@ -1,113 +0,0 @@
-package com.android.phasebeam;
-
-public class BackgroundManager
-{
-    public static final float[] vertexData = new float[]
-    {
-            //  X           Y          R            G           B
-            -0.750f,     1.000f,     0.000f,     0.643f,     1.100f,
-            -1.250f,     1.000f,     0.000f,     0.776f,     1.035f,
-            -1.000f,     0.600f,     0.000f,     0.643f,     1.100f,
-            +0.000f,     1.000f,     0.000f,     0.600f,     1.100f,
-            -0.750f,     1.000f,     0.000f,     0.643f,     1.100f,
-            -0.500f,     0.600f,     0.000f,     0.643f,     1.100f,
-            +0.625f,     1.000f,     0.194f,     0.423f,     0.569f,
-            +0.000f,     1.000f,     0.000f,     0.600f,     1.100f,
-            +0.375f,     0.600f,     0.207f,     0.207f,     0.487f,
-            +1.250f,     1.000f,     0.009f,     0.090f,     0.166f,
-            +0.625f,     1.000f,     0.194f,     0.423f,     0.569f,
-            +0.875f,     0.400f,     0.104f,     0.091f,     0.259f,
-            -1.000f,     0.600f,     0.000f,     0.643f,     1.100f,
-            -1.250f,     1.000f,     0.000f,     0.776f,     1.035f,
-            -1.250f,     0.200f,     0.362f,     0.315f,     0.660f,
-            -0.750f,     0.400f,     0.056f,     0.600f,     1.018f,
-            -1.000f,     0.600f,     0.000f,     0.643f,     1.100f,
-            -1.250f,     0.200f,     0.362f,     0.315f,     0.660f,
-            -0.500f,     0.600f,     0.000f,     0.643f,     1.100f,
-            -0.750f,     1.000f,     0.000f,     0.643f,     1.100f,
-            -1.000f,     0.600f,     0.000f,     0.643f,     1.100f,
-            -0.500f,     0.600f,     0.000f,     0.643f,     1.100f,
-            -1.000f,     0.600f,     0.000f,     0.643f,     1.100f,
-            -0.750f,     0.400f,     0.056f,     0.600f,     1.018f,
-            +0.000f,     0.300f,     0.138f,     0.155f,     0.522f,
-            +0.000f,     1.000f,     0.000f,     0.600f,     1.100f,
-            -0.500f,     0.600f,     0.000f,     0.643f,     1.100f,
-            +0.000f,     0.300f,     0.138f,     0.155f,     0.522f,
-            +0.375f,     0.600f,     0.207f,     0.207f,     0.487f,
-            +0.000f,     1.000f,     0.000f,     0.600f,     1.100f,
-            +0.875f,     0.400f,     0.104f,     0.091f,     0.259f,
-            +0.625f,     1.000f,     0.194f,     0.423f,     0.569f,
-            +0.375f,     0.600f,     0.207f,     0.207f,     0.487f,
-            +1.250f,     0.100f,     0.160f,     0.000f,     0.250f,
-            +1.250f,     1.000f,     0.009f,     0.090f,     0.166f,
-            +0.875f,     0.400f,     0.104f,     0.091f,     0.259f,
-            +0.375f,    -0.000f,     0.104f,     0.022f,     0.198f,
-            +0.375f,     0.600f,     0.207f,     0.207f,     0.487f,
-            +0.000f,     0.300f,     0.138f,     0.155f,     0.522f,
-            -0.375f,    -0.000f,     0.207f,     0.207f,     0.487f,
-            -0.500f,     0.600f,     0.000f,     0.643f,     1.100f,
-            -0.750f,     0.400f,     0.056f,     0.600f,     1.018f,
-            +0.000f,     0.300f,     0.138f,     0.155f,     0.522f,
-            -0.500f,     0.600f,     0.000f,     0.643f,     1.100f,
-            -0.375f,    -0.000f,     0.207f,     0.207f,     0.487f,
-            -0.750f,    -0.100f,     0.393f,     0.189f,     0.725f,
-            -0.750f,     0.400f,     0.056f,     0.600f,     1.018f,
-            -1.250f,     0.200f,     0.362f,     0.315f,     0.660f,
-            -0.750f,    -0.100f,     0.393f,     0.189f,     0.725f,
-            -1.250f,     0.200f,     0.362f,     0.315f,     0.660f,
-            -1.250f,    -0.640f,     0.143f,     0.121f,     0.574f,
-            -0.375f,    -0.000f,     0.207f,     0.207f,     0.487f,
-            -0.750f,     0.400f,     0.056f,     0.600f,     1.018f,
-            -0.750f,    -0.100f,     0.393f,     0.189f,     0.725f,
-            +0.375f,    -0.000f,     0.104f,     0.022f,     0.198f,
-            +0.000f,     0.300f,     0.138f,     0.155f,     0.522f,
-            -0.375f,    -0.000f,     0.207f,     0.207f,     0.487f,
-            +0.875f,     0.400f,     0.104f,     0.091f,     0.259f,
-            +0.375f,     0.600f,     0.207f,     0.207f,     0.487f,
-            +0.375f,    -0.000f,     0.104f,     0.022f,     0.198f,
-            +1.250f,     0.100f,     0.160f,     0.000f,     0.250f,
-            +0.875f,     0.400f,     0.104f,     0.091f,     0.259f,
-            +0.375f,    -0.000f,     0.104f,     0.022f,     0.198f,
-            -0.375f,    -0.500f,     0.086f,     0.017f,     0.315f,
-            -0.750f,    -0.100f,     0.393f,     0.189f,     0.725f,
-            -1.250f,    -0.640f,     0.143f,     0.121f,     0.574f,
-            -0.375f,    -0.500f,     0.086f,     0.017f,     0.315f,
-            -0.375f,    -0.000f,     0.207f,     0.207f,     0.487f,
-            -0.750f,    -0.100f,     0.393f,     0.189f,     0.725f,
-            +0.125f,    -0.500f,     0.035f,     0.004f,     0.181f,
-            -0.375f,    -0.000f,     0.207f,     0.207f,     0.487f,
-            -0.375f,    -0.500f,     0.086f,     0.017f,     0.315f,
-            +0.125f,    -0.500f,     0.035f,     0.004f,     0.181f,
-            +0.375f,    -0.000f,     0.104f,     0.022f,     0.198f,
-            -0.375f,    -0.000f,     0.207f,     0.207f,     0.487f,
-            +0.625f,    -0.400f,     0.022f,     0.009f,     0.095f,
-            +0.375f,    -0.000f,     0.104f,     0.022f,     0.198f,
-            +0.125f,    -0.500f,     0.035f,     0.004f,     0.181f,
-            +0.625f,    -0.400f,     0.022f,     0.009f,     0.095f,
-            +1.250f,     0.100f,     0.160f,     0.000f,     0.250f,
-            +0.375f,    -0.000f,     0.104f,     0.022f,     0.198f,
-            +1.250f,    -1.000f,     0.000f,     0.129f,     0.259f,
-            +1.250f,     0.100f,     0.160f,     0.000f,     0.250f,
-            +0.625f,    -0.400f,     0.022f,     0.009f,     0.095f,
-            +1.250f,    -1.000f,     0.000f,     0.129f,     0.259f,
-            +0.625f,    -0.400f,     0.022f,     0.009f,     0.095f,
-            +0.375f,    -1.000f,     0.000f,     0.000f,     0.000f,
-            +0.375f,    -1.000f,     0.000f,     0.000f,     0.000f,
-            +0.625f,    -0.400f,     0.022f,     0.009f,     0.095f,
-            +0.125f,    -0.500f,     0.035f,     0.004f,     0.181f,
-            +0.375f,    -1.000f,     0.000f,     0.000f,     0.000f,
-            +0.125f,    -0.500f,     0.035f,     0.004f,     0.181f,
-            -0.500f,    -1.000f,     0.017f,     0.004f,     0.078f,
-            -0.500f,    -1.000f,     0.017f,     0.004f,     0.078f,
-            +0.125f,    -0.500f,     0.035f,     0.004f,     0.181f,
-            -0.375f,    -0.500f,     0.086f,     0.017f,     0.315f,
-            -0.500f,    -1.000f,     0.017f,     0.004f,     0.078f,
-            -0.375f,    -0.500f,     0.086f,     0.017f,     0.315f,
-            -1.250f,    -1.000f,     0.160f,     0.008f,     0.008f,
-            -1.250f,    -0.640f,     0.143f,     0.121f,     0.574f,
-            -1.250f,    -1.000f,     0.160f,     0.008f,     0.008f,
-            -0.375f,    -0.500f,     0.086f,     0.017f,     0.315f
-    };
-    public static final int vertexCount = vertexData.length / 5;
-    public static final int vertexDataSize = vertexData.length * 4;
-}
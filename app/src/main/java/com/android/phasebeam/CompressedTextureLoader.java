@@ -0,0 +1,136 @@
+package com.android.phasebeam;
+
+import android.content.res.AssetManager;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Uploads the mipmapped ETC1 KTX written by SpriteAtlasCompiler straight from a memory-mapped asset
+public class CompressedTextureLoader
+{
+    private static final String TAG = "CompressedTextureLoader";
+
+    private static final int GL_ETC1_RGB8_OES = 0x8D64;
+    private static final int KTX_HEADER_SIZE = 12 + 13 * 4;
+    private static final int KTX_ENDIANNESS = 0x04030201;
+
+    private CompressedTextureLoader() {}
+
+    // Returns 0 when the context can't sample ETC or the asset is unusable, callers then decode the PNGs instead
+    public static int load(AssetManager assets, String assetName)
+    {
+        if (etcFormat() == 0)
+        {
+            return 0;
+        }
+
+        try
+        {
+            return load(MappedAssets.map(assets, assetName));
+        }
+        catch (IOException e)
+        {
+            Log.d(TAG, "compressed texture unavailable: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // Same for an asset that was already mapped off the GL thread
+    public static int load(ByteBuffer ktx)
+    {
+        int internalFormat = etcFormat();
+
+        if (internalFormat == 0)
+        {
+            return 0;
+        }
+
+        return upload(ktx, internalFormat);
+    }
+
+    // ETC1 data decodes identically as ETC2 RGB8, which every ES 3 context has to support
+    private static int etcFormat()
+    {
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+
+        if (extensions != null && extensions.contains("GL_OES_compressed_ETC1_RGB8_texture"))
+        {
+            return GL_ETC1_RGB8_OES;
+        }
+
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && version != null && version.startsWith("OpenGL ES 3"))
+        {
+            return GLES30.GL_COMPRESSED_RGB8_ETC2;
+        }
+
+        return 0;
+    }
+
+    private static int upload(ByteBuffer ktx, int internalFormat)
+    {
+        ktx.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (ktx.capacity() < KTX_HEADER_SIZE || ktx.getInt(12) != KTX_ENDIANNESS || ktx.getInt(28) != GL_ETC1_RGB8_OES)
+        {
+            Log.d(TAG, "not a little endian ETC1 KTX");
+            return 0;
+        }
+
+        int width = ktx.getInt(36);
+        int height = ktx.getInt(40);
+        int levelCount = Math.max(1, ktx.getInt(56));
+        int offset = KTX_HEADER_SIZE + ktx.getInt(60);
+
+        // Clear stale errors so the check after the upload only sees our own
+        while (GLES20.glGetError() != GLES20.GL_NO_ERROR) {}
+
+        final int[] textureHandle = new int[1];
+        GLES20.glGenTextures(1, textureHandle, 0);
+
+        if (textureHandle[0] == 0)
+        {
+            throw new RuntimeException("Error generating texture handle.");
+        }
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+
+        for (int level = 0; level < levelCount; level++)
+        {
+            int imageSize = ktx.getInt(offset);
+            offset += 4;
+
+            ByteBuffer levelData = ktx.duplicate();
+            levelData.position(offset);
+            levelData.limit(offset + imageSize);
+
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, internalFormat, width, height, 0, imageSize, levelData.slice());
+
+            offset += (imageSize + 3) & ~3;
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+        }
+
+        // Drivers may still refuse the format, which just means falling back to the PNGs
+        if (GLES20.glGetError() != GLES20.GL_NO_ERROR)
+        {
+            Log.d(TAG, "compressed texture upload failed");
+            GLES20.glDeleteTextures(1, textureHandle, 0);
+            return 0;
+        }
+
+        // A particle keeps its size for its whole life, so picking the nearest level never pops
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        return textureHandle[0];
+    }
+}
@@ -0,0 +1,511 @@
+package com.android.phasebeam;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+// Render thread owning an EGL14 display, context and window surface bound to the engine's SurfaceHolder
+// Drives a GLSurfaceView.Renderer with the same callbacks GLSurfaceView would, but only draws when asked to
+public class EglRenderThread extends Thread
+{
+    private static final String TAG = "EglRenderThread";
+
+    private static final int EGL_OPENGL_ES3_BIT_KHR = 0x40;
+
+    // Renderers that own GL objects delete them here, with the context current for the last time. In a share group
+    // a destroyed context's objects would otherwise live on for as long as any other member does
+    public interface ContextListener
+    {
+        void onContextReleasing();
+    }
+
+    //region Configuration, fixed before start
+        private final GLSurfaceView.Renderer renderer;
+        private final int[] configSizes;
+        private final int contextClientVersion;
+        private final EglShareGroup shareGroup;
+    //endregion
+
+    //region State shared with the engine, guarded by lock
+        private final Object lock = new Object();
+        private SurfaceHolder surfaceHolder;
+        private boolean hasSurface;
+        private boolean surfaceReleased = true;
+        private boolean paused;
+        private boolean releaseContextRequested;
+        private boolean renderRequested;
+        private boolean sizeChanged;
+        private int width;
+        private int height;
+        private int swapInterval = 1;
+        private boolean exitRequested;
+        private boolean exited;
+    //endregion
+
+    //region EGL objects, only touched on this thread
+        private EGLDisplay eglDisplay;
+        private EGLConfig eglConfig;
+        private EGLContext eglContext;
+        private EGLSurface eglSurface;
+        private int appliedSwapInterval = -1;
+
+        // A new context owes the renderer onSurfaceCreated until a surface has been made current with it
+        private boolean pendingSurfaceCreated;
+    //endregion
+
+    // Color sizes have to match exactly, depth and stencil are minimums and the smallest match wins
+    // Contexts join the share group so objects the renderer shares through it are created once per process
+    public EglRenderThread(GLSurfaceView.Renderer renderer, int redSize, int greenSize, int blueSize, int alphaSize,
+                           int depthSize, int stencilSize, int contextClientVersion, EglShareGroup shareGroup)
+    {
+        super("PhaseBeamGL");
+        this.renderer = renderer;
+        this.configSizes = new int[] {redSize, greenSize, blueSize, alphaSize, depthSize, stencilSize};
+        this.contextClientVersion = contextClientVersion;
+        this.shareGroup = shareGroup;
+    }
+
+    //region Engine side, callable from any thread
+        public void surfaceCreated(SurfaceHolder holder)
+        {
+            synchronized (lock)
+            {
+                surfaceHolder = holder;
+                hasSurface = true;
+                surfaceReleased = false;
+                lock.notifyAll();
+            }
+        }
+
+        public void surfaceChanged(int width, int height)
+        {
+            synchronized (lock)
+            {
+                this.width = width;
+                this.height = height;
+                sizeChanged = true;
+                renderRequested = true;
+                lock.notifyAll();
+            }
+        }
+
+        // Blocks until the EGL surface is gone, the window must not be used once this returns
+        public void surfaceDestroyed()
+        {
+            synchronized (lock)
+            {
+                hasSurface = false;
+                lock.notifyAll();
+
+                while (!surfaceReleased && !exited)
+                {
+                    try
+                    {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        // The context and surface stay alive while paused, so resuming draws straight away
+        public void onPause()
+        {
+            synchronized (lock)
+            {
+                paused = true;
+                lock.notifyAll();
+            }
+        }
+
+        public void onResume()
+        {
+            synchronized (lock)
+            {
+                paused = false;
+                renderRequested = true;
+                lock.notifyAll();
+            }
+        }
+
+        // Memory pressure while hidden, the context and surface go away until the next frame after resuming
+        public void requestReleaseContext()
+        {
+            synchronized (lock)
+            {
+                releaseContextRequested = true;
+                lock.notifyAll();
+            }
+        }
+
+        public void requestRender()
+        {
+            synchronized (lock)
+            {
+                renderRequested = true;
+                lock.notifyAll();
+            }
+        }
+
+        public void setSwapInterval(int swapInterval)
+        {
+            synchronized (lock)
+            {
+                this.swapInterval = swapInterval;
+            }
+        }
+
+        public void requestExitAndWait()
+        {
+            synchronized (lock)
+            {
+                exitRequested = true;
+                lock.notifyAll();
+            }
+
+            try
+            {
+                join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    //endregion
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            renderLoop();
+        }
+        catch (InterruptedException ignored) {}
+        finally
+        {
+            notifyContextReleasing();
+            releaseSurface();
+            releaseContext();
+
+            if (eglDisplay != null)
+            {
+                EGL14.eglTerminate(eglDisplay);
+                EGL14.eglReleaseThread();
+                eglDisplay = null;
+            }
+
+            synchronized (lock)
+            {
+                exited = true;
+                surfaceReleased = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void renderLoop() throws InterruptedException
+    {
+        while (true)
+        {
+            SurfaceHolder holder;
+            boolean resized;
+            int frameWidth;
+            int frameHeight;
+            int frameSwapInterval;
+
+            synchronized (lock)
+            {
+                while (true)
+                {
+                    if (exitRequested)
+                    {
+                        return;
+                    }
+
+                    if (!hasSurface)
+                    {
+                        releaseSurface();
+
+                        if (!surfaceReleased)
+                        {
+                            surfaceReleased = true;
+                            lock.notifyAll();
+                        }
+                    }
+
+                    // Only honoured while nothing is drawn, a request that raced with resuming is dropped
+                    if (releaseContextRequested)
+                    {
+                        if (paused || !hasSurface)
+                        {
+                            Log.d(TAG, "releasing the EGL context under memory pressure");
+                            notifyContextReleasing();
+                            releaseSurface();
+                            releaseContext();
+                        }
+
+                        releaseContextRequested = false;
+                    }
+
+                    if (hasSurface && !paused && renderRequested && width > 0 && height > 0)
+                    {
+                        break;
+                    }
+
+                    lock.wait();
+                }
+
+                holder = surfaceHolder;
+                resized = sizeChanged;
+                frameWidth = width;
+                frameHeight = height;
+                frameSwapInterval = swapInterval;
+                sizeChanged = false;
+                renderRequested = false;
+            }
+
+            if (eglContext == null)
+            {
+                createContext();
+            }
+
+            if (eglSurface == null)
+            {
+                // Without a usable window nothing can be drawn until the next surface callback
+                if (!createSurface(holder))
+                {
+                    continue;
+                }
+
+                resized = true;
+            }
+
+            // The interval belongs to the surface, so a new surface needs it applied again
+            if (frameSwapInterval != appliedSwapInterval)
+            {
+                EGL14.eglSwapInterval(eglDisplay, frameSwapInterval);
+                appliedSwapInterval = frameSwapInterval;
+            }
+
+            if (pendingSurfaceCreated)
+            {
+                renderer.onSurfaceCreated(null, null);
+                pendingSurfaceCreated = false;
+            }
+
+            if (resized)
+            {
+                renderer.onSurfaceChanged(null, frameWidth, frameHeight);
+            }
+
+            renderer.onDrawFrame(null);
+
+            if (!EGL14.eglSwapBuffers(eglDisplay, eglSurface))
+            {
+                handleSwapError(EGL14.eglGetError());
+            }
+        }
+    }
+
+    private void handleSwapError(int error)
+    {
+        if (error == EGL14.EGL_CONTEXT_LOST)
+        {
+            // Everything is recreated on the next frame and the renderer gets onSurfaceCreated again
+            Log.d(TAG, "EGL context lost");
+            releaseSurface();
+            releaseContext();
+        }
+        else if (error == EGL14.EGL_BAD_SURFACE || error == EGL14.EGL_BAD_NATIVE_WINDOW)
+        {
+            Log.d(TAG, "EGL surface lost: 0x" + Integer.toHexString(error));
+            releaseSurface();
+        }
+        else
+        {
+            Log.d(TAG, "eglSwapBuffers failed: 0x" + Integer.toHexString(error));
+            return;
+        }
+
+        requestRender();
+    }
+
+    //region EGL helpers
+        // Without a surface the context is made current surfaceless, drivers without EGL_KHR_surfaceless_context
+        // refuse and the objects are left to the context's destruction
+        private void notifyContextReleasing()
+        {
+            if (eglContext == null || !(renderer instanceof ContextListener))
+            {
+                return;
+            }
+
+            if (eglSurface == null
+                    && !EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, eglContext))
+            {
+                Log.d(TAG, "can't make the context current to release it: 0x" + Integer.toHexString(EGL14.eglGetError()));
+                return;
+            }
+
+            ((ContextListener) renderer).onContextReleasing();
+        }
+
+        private void createContext()
+        {
+            if (eglDisplay == null)
+            {
+                eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+                int[] version = new int[2];
+
+                if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1))
+                {
+                    throw new RuntimeException("eglInitialize failed: 0x" + Integer.toHexString(EGL14.eglGetError()));
+                }
+            }
+
+            eglConfig = chooseConfig();
+
+            // An ES 3 context when the config allows it lets the GLES30 timer and program binary paths run
+            int[] renderableType = new int[1];
+            EGL14.eglGetConfigAttrib(eglDisplay, eglConfig, EGL14.EGL_RENDERABLE_TYPE, renderableType, 0);
+
+            if (contextClientVersion < 3 && (renderableType[0] & EGL_OPENGL_ES3_BIT_KHR) != 0)
+            {
+                eglContext = createContext(3);
+            }
+
+            if (eglContext == null)
+            {
+                eglContext = createContext(contextClientVersion);
+            }
+
+            if (eglContext == null)
+            {
+                throw new RuntimeException("eglCreateContext failed: 0x" + Integer.toHexString(EGL14.eglGetError()));
+            }
+
+            pendingSurfaceCreated = true;
+        }
+
+        private EGLContext createContext(int clientVersion)
+        {
+            int[] attributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, clientVersion, EGL14.EGL_NONE};
+
+            return shareGroup.createContext(eglDisplay, eglConfig, attributes);
+        }
+
+        private EGLConfig chooseConfig()
+        {
+            int[] attributes = {
+                    EGL14.EGL_RED_SIZE, configSizes[0],
+                    EGL14.EGL_GREEN_SIZE, configSizes[1],
+                    EGL14.EGL_BLUE_SIZE, configSizes[2],
+                    EGL14.EGL_ALPHA_SIZE, configSizes[3],
+                    EGL14.EGL_DEPTH_SIZE, configSizes[4],
+                    EGL14.EGL_STENCIL_SIZE, configSizes[5],
+                    EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                    EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT,
+                    EGL14.EGL_NONE
+            };
+
+            EGLConfig[] configs = new EGLConfig[32];
+            int[] configCount = new int[1];
+
+            if (!EGL14.eglChooseConfig(eglDisplay, attributes, 0, configs, 0, configs.length, configCount, 0) || configCount[0] == 0)
+            {
+                throw new RuntimeException("No EGL config for " + configSizes[0] + configSizes[1] + configSizes[2] + configSizes[3]);
+            }
+
+            // eglChooseConfig puts deeper colors first, so look for the exact sizes with the least depth and stencil
+            EGLConfig bestConfig = configs[0];
+            int bestExtraBits = Integer.MAX_VALUE;
+            int[] value = new int[1];
+
+            for (int i = 0; i < configCount[0]; i++)
+            {
+                if (configAttribute(configs[i], EGL14.EGL_RED_SIZE, value) != configSizes[0]
+                        || configAttribute(configs[i], EGL14.EGL_GREEN_SIZE, value) != configSizes[1]
+                        || configAttribute(configs[i], EGL14.EGL_BLUE_SIZE, value) != configSizes[2]
+                        || configAttribute(configs[i], EGL14.EGL_ALPHA_SIZE, value) != configSizes[3])
+                {
+                    continue;
+                }
+
+                int extraBits = configAttribute(configs[i], EGL14.EGL_DEPTH_SIZE, value)
+                        + configAttribute(configs[i], EGL14.EGL_STENCIL_SIZE, value);
+
+                if (extraBits < bestExtraBits)
+                {
+                    bestExtraBits = extraBits;
+                    bestConfig = configs[i];
+                }
+            }
+
+            return bestConfig;
+        }
+
+        private int configAttribute(EGLConfig config, int attribute, int[] value)
+        {
+            return EGL14.eglGetConfigAttrib(eglDisplay, config, attribute, value, 0) ? value[0] : -1;
+        }
+
+        private boolean createSurface(SurfaceHolder holder)
+        {
+            int[] attributes = {EGL14.EGL_NONE};
+            EGLSurface surface = EGL14.eglCreateWindowSurface(eglDisplay, eglConfig, holder, attributes, 0);
+
+            if (surface == null || surface.equals(EGL14.EGL_NO_SURFACE))
+            {
+                Log.d(TAG, "eglCreateWindowSurface failed: 0x" + Integer.toHexString(EGL14.eglGetError()));
+                return false;
+            }
+
+            if (!EGL14.eglMakeCurrent(eglDisplay, surface, surface, eglContext))
+            {
+                Log.d(TAG, "eglMakeCurrent failed: 0x" + Integer.toHexString(EGL14.eglGetError()));
+                EGL14.eglDestroySurface(eglDisplay, surface);
+                return false;
+            }
+
+            eglSurface = surface;
+            appliedSwapInterval = -1;
+
+            return true;
+        }
+
+        // The context is kept, the next surface is simply made current with it
+        private void releaseSurface()
+        {
+            if (eglSurface == null)
+            {
+                return;
+            }
+
+            EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            EGL14.eglDestroySurface(eglDisplay, eglSurface);
+            eglSurface = null;
+        }
+
+        private void releaseContext()
+        {
+            if (eglContext == null)
+            {
+                return;
+            }
+
+            EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            shareGroup.destroyContext(eglDisplay, eglContext);
+            eglContext = null;
+        }
+    //endregion
+}
@@ -0,0 +1,131 @@
+package com.android.phasebeam;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// One EGL share group for every render thread of the service, so immutable GL objects like the atlas texture
+// and static buffers are created once per process rather than once per engine. Contexts that can't join,
+// and GLSurfaceView contexts before EGL14, simply create their own objects
+public class EglShareGroup
+{
+    private static final String TAG = "EglShareGroup";
+
+    public interface Factory
+    {
+        int create();
+
+        // Gives back an object another context published first, with the context that created it current
+        void delete(int object);
+    }
+
+    //region Group state, guarded by this
+        private final ArrayList<EGLContext> contexts = new ArrayList<EGLContext>();
+        private final HashMap<String, Integer> objects = new HashMap<String, Integer>();
+    //endregion
+
+    // Shares with any live member, a context the driver refuses to share with is returned outside the group
+    public synchronized EGLContext createContext(EGLDisplay display, EGLConfig config, int[] attributes)
+    {
+        if (!contexts.isEmpty())
+        {
+            EGLContext context = EGL14.eglCreateContext(display, config, contexts.get(0), attributes, 0);
+
+            if (context != null && !context.equals(EGL14.EGL_NO_CONTEXT))
+            {
+                contexts.add(context);
+                return context;
+            }
+
+            Log.d(TAG, "context can't join the share group: 0x" + Integer.toHexString(EGL14.eglGetError()));
+        }
+
+        EGLContext context = EGL14.eglCreateContext(display, config, EGL14.EGL_NO_CONTEXT, attributes, 0);
+
+        if (context == null || context.equals(EGL14.EGL_NO_CONTEXT))
+        {
+            return null;
+        }
+
+        // The first context starts the group
+        if (contexts.isEmpty())
+        {
+            contexts.add(context);
+        }
+
+        return context;
+    }
+
+    // The shared objects die with the last context of the group
+    public synchronized void destroyContext(EGLDisplay display, EGLContext context)
+    {
+        EGL14.eglDestroyContext(display, context);
+
+        if (contexts.remove(context) && contexts.isEmpty())
+        {
+            objects.clear();
+        }
+    }
+
+    // Call on the GL thread, returns the object some context of the group created under this key or creates it now.
+    // Shared objects must never be modified or deleted by a single renderer. The upload runs outside the lock, so
+    // the other render threads never wait for it
+    public int getOrCreate(String key, Factory factory)
+    {
+        if (!isMember())
+        {
+            return factory.create();
+        }
+
+        Integer object = getObject(key);
+
+        if (object != null)
+        {
+            return object;
+        }
+
+        int created = factory.create();
+
+        if (created == 0)
+        {
+            return 0;
+        }
+
+        // Other contexts are only guaranteed to see the contents once this one has finished them
+        GLES20.glFinish();
+
+        synchronized (this)
+        {
+            object = objects.get(key);
+
+            if (object == null)
+            {
+                objects.put(key, created);
+                return created;
+            }
+        }
+
+        // Another context uploaded the same object meanwhile, its copy is the one everyone uses
+        factory.delete(created);
+
+        return object;
+    }
+
+    private synchronized Integer getObject(String key)
+    {
+        return objects.get(key);
+    }
+
+    // True while the current context belongs to the group, so getOrCreate hands out shared objects
+    public synchronized boolean isMember()
+    {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && contexts.contains(EGL14.eglGetCurrentContext());
+    }
+}
@@ -0,0 +1,135 @@
+package com.android.phasebeam;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.Surface;
+
+public class FrameScheduler implements Runnable
+{
+    public static final int FPS_NATIVE = FramePacer.FPS_NATIVE;
+
+    private static final long FALLBACK_FRAME_MILLIS = 16L;
+
+    //region Scheduling state
+        private final Runnable renderRequest;
+        private final Handler handler = new Handler();
+        private final FramePacer framePacer;
+        private boolean running;
+
+        // Only created on API 16+, older verifiers must never see a Choreographer type in this class's signature
+        private VsyncCallback vsyncCallback;
+    //endregion
+
+    public FrameScheduler(Runnable renderRequest, int targetFps)
+    {
+        this.renderRequest = renderRequest;
+        this.framePacer = new FramePacer(targetFps);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+        {
+            vsyncCallback = new VsyncCallback(this);
+        }
+    }
+
+    public void setTargetFps(int targetFps)
+    {
+        framePacer.setTargetFps(targetFps);
+    }
+
+    public int getTargetFps()
+    {
+        return framePacer.getTargetFps();
+    }
+
+    // Lets the display drop its refresh rate to match the animation on API 30+
+    public void applyFrameRate(Surface surface)
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && surface != null && surface.isValid())
+        {
+            surface.setFrameRate(framePacer.getTargetFps(), Surface.FRAME_RATE_COMPATIBILITY_DEFAULT);
+        }
+    }
+
+    public void start()
+    {
+        if (running)
+        {
+            return;
+        }
+
+        running = true;
+        framePacer.reset();
+        postNextFrame();
+    }
+
+    public void stop()
+    {
+        running = false;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+        {
+            Choreographer.getInstance().removeFrameCallback(vsyncCallback);
+        }
+        else
+        {
+            handler.removeCallbacks(this);
+        }
+    }
+
+    // Renders right away without waiting for the next paced frame, e.g. while scrolling
+    public void requestImmediateFrame()
+    {
+        renderRequest.run();
+    }
+
+    private void onFrame(long frameTimeNanos)
+    {
+        if (!running)
+        {
+            return;
+        }
+
+        if (framePacer.shouldRender(frameTimeNanos))
+        {
+            renderRequest.run();
+        }
+
+        postNextFrame();
+    }
+
+    @Override
+    public void run()
+    {
+        onFrame(SystemClock.uptimeMillis() * 1000000L);
+    }
+
+    private void postNextFrame()
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+        {
+            Choreographer.getInstance().postFrameCallback(vsyncCallback);
+        }
+        else
+        {
+            handler.postDelayed(this, FALLBACK_FRAME_MILLIS);
+        }
+    }
+
+    private static class VsyncCallback implements Choreographer.FrameCallback
+    {
+        private final FrameScheduler scheduler;
+
+        VsyncCallback(FrameScheduler scheduler)
+        {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos)
+        {
+            scheduler.onFrame(frameTimeNanos);
+        }
+    }
+}
@@ -1,19 +1,53 @@
 package com.android.phasebeam;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.opengl.GLSurfaceView;
 import android.os.Build;
 import android.service.wallpaper.WallpaperService;
 import android.view.SurfaceHolder;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
 public abstract class GLWallpaperService extends WallpaperService
 {
+    // Every engine's render thread joins this group, see PhaseBeamRenderer for what lives in it
+    protected final EglShareGroup shareGroup = new EglShareGroup();
+
+    // Live engines, only touched on the main thread
+    private final ArrayList<GLEngine> engines = new ArrayList<GLEngine>();
+
+    @Override
+    public void onTrimMemory(int level)
+    {
+        super.onTrimMemory(level);
+
+        for (GLEngine engine : engines)
+        {
+            engine.trimMemory(level);
+        }
+    }
+
     public class GLEngine extends Engine
     {
         private WallpaperGLSurfaceView glSurfaceView;
+        private EglRenderThread renderThread;
+        private FrameScheduler frameScheduler;
         private boolean rendererHasBeenSet;
         PhaseBeamRenderer renderer;
 
+        //region EGL configuration, read when the render thread starts
+            private int redSize = 8;
+            private int greenSize = 8;
+            private int blueSize = 8;
+            private int alphaSize;
+            private int depthSize;
+            private int stencilSize;
+            private int contextClientVersion = 2;
+        //endregion
+
         class WallpaperGLSurfaceView extends GLSurfaceView
         {
 
@@ -38,7 +72,67 @@ public abstract class GLWallpaperService extends WallpaperService
         {
             super.onCreate(surfaceHolder);
 
-            glSurfaceView = new WallpaperGLSurfaceView(GLWallpaperService.this);
+            // EGL14 drives the engine's surface directly, older releases go through the GLSurfaceView shim
+            if (!usesRenderThread())
+            {
+                glSurfaceView = new WallpaperGLSurfaceView(GLWallpaperService.this);
+            }
+
+            frameScheduler = new FrameScheduler(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    requestRender();
+                }
+            }, FrameScheduler.FPS_NATIVE);
+            engines.add(this);
+        }
+
+        @Override
+        public void onSurfaceCreated(SurfaceHolder holder)
+        {
+            super.onSurfaceCreated(holder);
+
+            if (renderThread != null)
+            {
+                renderThread.surfaceCreated(holder);
+            }
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height)
+        {
+            super.onSurfaceChanged(holder, format, width, height);
+            frameScheduler.applyFrameRate(holder.getSurface());
+
+            if (renderThread != null)
+            {
+                renderThread.surfaceChanged(width, height);
+            }
+        }
+
+        @Override
+        public void onSurfaceDestroyed(SurfaceHolder holder)
+        {
+            // Returns only once the render thread let go of the window
+            if (renderThread != null)
+            {
+                renderThread.surfaceDestroyed();
+            }
+
+            super.onSurfaceDestroyed(holder);
+        }
+
+        @Override
+        public void onSurfaceRedrawNeeded(SurfaceHolder holder)
+        {
+            super.onSurfaceRedrawNeeded(holder);
+
+            if (rendererHasBeenSet)
+            {
+                frameScheduler.requestImmediateFrame();
+            }
         }
 
         @Override
@@ -50,11 +144,13 @@ public abstract class GLWallpaperService extends WallpaperService
             {
                 if (visible)
                 {
-                    glSurfaceView.onResume();
+                    resumeRendering();
+                    frameScheduler.start();
                 }
                 else
                 {
-                    glSurfaceView.onPause();
+                    frameScheduler.stop();
+                    pauseRendering();
                 }
             }
         }
@@ -63,31 +159,178 @@ public abstract class GLWallpaperService extends WallpaperService
         public void onDestroy()
         {
             super.onDestroy();
-            glSurfaceView.onDestroy();
+            engines.remove(this);
+            frameScheduler.stop();
+
+            if (renderThread != null)
+            {
+                renderThread.requestExitAndWait();
+            }
+            else
+            {
+                glSurfaceView.onDestroy();
+            }
+
+            if (rendererHasBeenSet)
+            {
+                renderer.release();
+            }
         }
 
+        // Shows up under adb shell dumpsys wallpaper
+        @Override
+        protected void dump(String prefix, FileDescriptor fd, PrintWriter out, String[] args)
+        {
+            super.dump(prefix, fd, out, args);
+
+            if (rendererHasBeenSet)
+            {
+                renderer.dump(out, prefix);
+            }
+        }
+
+        // Any pressure, moderate included, drops the renderer's CPU-side copies. Only complete or running critical
+        // pressure while hidden also drops the GL objects and the context, which come back on the next visible
+        // frame. GLSurfaceView can't run GL while paused, so it only trims
+        void trimMemory(int level)
+        {
+            if (!rendererHasBeenSet)
+            {
+                return;
+            }
+
+            renderer.trimMemory();
+
+            boolean severe = level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                    || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+
+            if (severe && !isVisible() && renderThread != null)
+            {
+                renderThread.requestReleaseContext();
+            }
+        }
+
+        // Has to be called from onCreate, the render thread only learns about surfaces created after it
         protected void setRenderer(GLSurfaceView.Renderer renderer)
         {
             this.renderer = (PhaseBeamRenderer)renderer;
-            glSurfaceView.setRenderer(renderer);
+
+            if (usesRenderThread())
+            {
+                renderThread = new EglRenderThread(renderer, redSize, greenSize, blueSize, alphaSize, depthSize, stencilSize,
+                        contextClientVersion, shareGroup);
+                renderThread.start();
+            }
+            else
+            {
+                glSurfaceView.setRenderer(renderer);
+                glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+            }
+
             rendererHasBeenSet = true;
         }
 
+        // Frames per second the scheduler paces rendering to, FrameScheduler.FPS_NATIVE follows vsync
+        protected void setTargetFrameRate(int fps)
+        {
+            frameScheduler.setTargetFps(fps);
+            frameScheduler.applyFrameRate(getSurfaceHolder().getSurface());
+
+            if (rendererHasBeenSet)
+            {
+                renderer.setTargetFps(fps);
+            }
+        }
+
+        protected void requestImmediateFrame()
+        {
+            if (rendererHasBeenSet)
+            {
+                frameScheduler.requestImmediateFrame();
+            }
+        }
+
+        // vsync intervals per swap, only honoured by the EGL14 render thread
+        protected void setSwapInterval(int interval)
+        {
+            if (renderThread != null)
+            {
+                renderThread.setSwapInterval(interval);
+            }
+        }
+
+        // The render thread always keeps its context while paused
         protected void setPreserveEGLContextOnPause(boolean preserve)
         {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            if (glSurfaceView != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
                 glSurfaceView.setPreserveEGLContextOnPause(preserve);
             }
         }
 
         protected void setEGLContextClientVersion(int version)
         {
-            glSurfaceView.setEGLContextClientVersion(version);
+            contextClientVersion = version;
+
+            if (glSurfaceView != null)
+            {
+                glSurfaceView.setEGLContextClientVersion(version);
+            }
         }
 
         protected void setEGLConfigChooser(int redSize, int greenSize, int blueSize, int alphaSize, int depthSize, int stencilSize)
         {
-            glSurfaceView.setEGLConfigChooser(redSize, greenSize, blueSize, alphaSize, depthSize, stencilSize);
+            this.redSize = redSize;
+            this.greenSize = greenSize;
+            this.blueSize = blueSize;
+            this.alphaSize = alphaSize;
+            this.depthSize = depthSize;
+            this.stencilSize = stencilSize;
+
+            if (glSurfaceView != null)
+            {
+                glSurfaceView.setEGLConfigChooser(redSize, greenSize, blueSize, alphaSize, depthSize, stencilSize);
+            }
+        }
+
+        private boolean usesRenderThread()
+        {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
+        }
+
+        private void requestRender()
+        {
+            if (renderThread != null)
+            {
+                renderThread.requestRender();
+            }
+            else
+            {
+                glSurfaceView.requestRender();
+            }
+        }
+
+        private void resumeRendering()
+        {
+            if (renderThread != null)
+            {
+                renderThread.onResume();
+            }
+            else
+            {
+                glSurfaceView.onResume();
+            }
+        }
+
+        private void pauseRendering()
+        {
+            if (renderThread != null)
+            {
+                renderThread.onPause();
+            }
+            else
+            {
+                glSurfaceView.onPause();
+            }
         }
     }
 }
@@ -0,0 +1,137 @@
+package com.android.phasebeam;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+
+// Measures GPU time with EXT_disjoint_timer_query on every few frames, results are read back frames later without
+// stalling. The queries go through the renderer's GLApi, so they show up in its per-frame counts
+public class GpuTimer
+{
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+    // Queries in flight, a sample is skipped rather than waiting when all of them are pending
+    private static final int QUERY_COUNT = 4;
+
+    // Frames per sample, the others neither time nor read anything back. A sample finishes well before the next one
+    private static final int SAMPLE_INTERVAL = 4;
+
+    //region Query data
+        private final GLApi gl;
+        private final int[] queryIds = new int[QUERY_COUNT];
+        private final int[] result = new int[1];
+        private boolean supported;
+        private boolean timing;
+        private int nextQuery;
+        private int pendingQueries;
+        private int frame;
+        private boolean sampling;
+    //endregion
+
+    public GpuTimer(GLApi gl)
+    {
+        this.gl = gl;
+    }
+
+    // Must be called on the GL thread whenever a new context has been created
+    public void create()
+    {
+        supported = false;
+        timing = false;
+        nextQuery = 0;
+        pendingQueries = 0;
+        frame = 0;
+        sampling = false;
+
+        // The extension only has Java bindings through the ES 3.0 query functions
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+        {
+            return;
+        }
+
+        String version = gl.glGetString(GLES20.GL_VERSION);
+        String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+
+        if (version == null || !version.startsWith("OpenGL ES 3")
+                || extensions == null || !extensions.contains("GL_EXT_disjoint_timer_query"))
+        {
+            return;
+        }
+
+        gl.glGenQueries(QUERY_COUNT, queryIds, 0);
+        supported = true;
+    }
+
+    public boolean isSupported()
+    {
+        return supported;
+    }
+
+    // Only on the frames collect picked for a sample
+    public void begin()
+    {
+        if (!sampling || pendingQueries == QUERY_COUNT)
+        {
+            return;
+        }
+
+        gl.glBeginQuery(GL_TIME_ELAPSED_EXT, queryIds[nextQuery]);
+        timing = true;
+    }
+
+    public void end()
+    {
+        if (!timing)
+        {
+            return;
+        }
+
+        gl.glEndQuery(GL_TIME_ELAPSED_EXT);
+        timing = false;
+        nextQuery = (nextQuery + 1) % QUERY_COUNT;
+        pendingQueries++;
+    }
+
+    // Called at the start of every frame, picks whether the frame is sampled. On sampled frames records every
+    // finished query in submission order and stops at the first one still running
+    // Returns the newest GPU time recorded, or -1 when none finished
+    public long collect(LogHistogram histogram)
+    {
+        long newest = -1;
+
+        sampling = supported && frame++ % SAMPLE_INTERVAL == 0;
+
+        if (!sampling || pendingQueries == 0)
+        {
+            return newest;
+        }
+
+        // A disjoint event (frequency change, context switch) invalidates whatever is in flight, reading it also clears it
+        gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        boolean disjoint = result[0] != 0;
+
+        while (pendingQueries > 0)
+        {
+            int queryId = queryIds[(nextQuery - pendingQueries + QUERY_COUNT) % QUERY_COUNT];
+
+            gl.glGetQueryObjectuiv(queryId, GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+
+            if (result[0] == 0)
+            {
+                break;
+            }
+
+            gl.glGetQueryObjectuiv(queryId, GLES30.GL_QUERY_RESULT, result, 0);
+            pendingQueries--;
+
+            if (!disjoint)
+            {
+                newest = result[0] & 0xFFFFFFFFL;
+                histogram.record(newest);
+            }
+        }
+
+        return newest;
+    }
+}
@@ -0,0 +1,34 @@
+package com.android.phasebeam;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Maps build-time assets straight out of the APK instead of copying them onto the heap
+public final class MappedAssets
+{
+    private MappedAssets() {}
+
+    // openFd only works for assets stored uncompressed, see noCompress in app/build.gradle
+    public static MappedByteBuffer map(AssetManager assets, String assetName) throws IOException
+    {
+        AssetFileDescriptor descriptor = assets.openFd(assetName);
+        FileInputStream inputStream = descriptor.createInputStream();
+
+        try
+        {
+            // The mapping stays valid after the channel is closed
+            FileChannel channel = inputStream.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+        }
+        finally
+        {
+            inputStream.close();
+            descriptor.close();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.android.phasebeam;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+// Framebuffer with a color texture the scene is drawn into below the surface resolution
+public class OffscreenTarget
+{
+    private static final String TAG = "OffscreenTarget";
+
+    //region Target data
+        private final GLApi gl;
+        private final GLResourceManager resources;
+        private final int[] ids = new int[1];
+        private int framebufferId;
+        private int textureId;
+        private int width;
+        private int height;
+
+        // Size the driver refused, not retried until the renderer asks for another one
+        private int failedWidth;
+        private int failedHeight;
+    //endregion
+
+    public OffscreenTarget(GLApi gl, GLResourceManager resources)
+    {
+        this.gl = gl;
+        this.resources = resources;
+    }
+
+    // Must be called on the GL thread whenever a new context has been created, the old names died with the old one
+    public void create()
+    {
+        clearNames();
+        failedWidth = 0;
+        failedHeight = 0;
+    }
+
+    public boolean isAllocated()
+    {
+        return framebufferId != 0;
+    }
+
+    public int getTextureId()
+    {
+        return textureId;
+    }
+
+    // Reallocates the texture when the size changed, returns false if the driver can't render into it
+    public boolean resize(int width, int height)
+    {
+        if (isAllocated() && width == this.width && height == this.height)
+        {
+            return true;
+        }
+
+        if (width == failedWidth && height == failedHeight)
+        {
+            return false;
+        }
+
+        if (!isAllocated())
+        {
+            gl.glGenFramebuffers(1, ids, 0);
+            framebufferId = ids[0];
+            gl.glGenTextures(1, ids, 0);
+            textureId = ids[0];
+            resources.track(GLResourceManager.FRAMEBUFFER, framebufferId, 0);
+        }
+
+        resources.track(GLResourceManager.TEXTURE, textureId, (long) width * height * 4);
+
+        // Non power of two sizes are fine in ES 2 as long as there are no mipmaps and wrapping clamps
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+        gl.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, textureId, 0);
+
+        int status = gl.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE)
+        {
+            Log.d(TAG, "offscreen target incomplete: " + status);
+            release();
+            failedWidth = width;
+            failedHeight = height;
+            return false;
+        }
+
+        this.width = width;
+        this.height = height;
+
+        return true;
+    }
+
+    public void bind()
+    {
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+        gl.glViewport(0, 0, width, height);
+    }
+
+    // Gives the memory back while rendering at full resolution
+    public void release()
+    {
+        if (!isAllocated())
+        {
+            return;
+        }
+
+        resources.delete(GLResourceManager.FRAMEBUFFER, framebufferId);
+        resources.delete(GLResourceManager.TEXTURE, textureId);
+
+        clearNames();
+    }
+
+    private void clearNames()
+    {
+        framebufferId = 0;
+        textureId = 0;
+        width = 0;
+        height = 0;
+    }
+}
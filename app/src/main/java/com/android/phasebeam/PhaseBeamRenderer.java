@@ -2,420 +2,701 @@ package com.android.phasebeam;
 
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 import android.content.Context;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.opengl.Matrix;
-import android.os.Build;
-import android.os.SystemClock;
 import android.util.Log;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.util.HashMap;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-public class PhaseBeamRenderer implements GLSurfaceView.Renderer
+public class PhaseBeamRenderer implements GLSurfaceView.Renderer, EglRenderThread.ContextListener
 {
     public String TAG = "PhaseBeamRenderer";
 
+    // Compiled from app/src/main/scenes by :app:compileScenes, other scenes there can be passed by name
+    public static final String DEFAULT_SCENE_ASSET = "scenes/phasebeam.pbscene";
+
+    // Longer frames, like the first one after becoming visible again, only catch up this far
+    private static final long MAX_FRAME_NANOS = 100000000L;
+
     //region Data
         private final Context context;
-        private final ParticleManager particleManager = new ParticleManager();
+        private final String sceneAsset;
+        private final PackedScene scene;
+        private final ParticleManager particleManager;
         private int densityDPI;
-        private long startTime = SystemClock.uptimeMillis();
+        private final SimulationClock simulationClock = new SimulationClock(ParticleManager.STEP_NANOS, MAX_FRAME_NANOS);
+        private volatile int animationMode = SceneRenderer.ANIMATION_CPU;
+        private volatile int requestedParticleCount;
+        private volatile float particleFraction = 1.0f;
+        private int spriteMode = SceneRenderer.SPRITE_POINTS;
+    //endregion
+
+    //region Instrumentation
+        // Every GL call goes through the state cache, which only passes on actual changes, and what
+        // reaches the driver is counted per frame
+        private final StateCacheGL gl;
+        private final CountingGL glCounters;
+        private final FrameStats frameStats = new FrameStats();
+        private final GpuTimer gpuTimer;
+        private long lastGpuTime = -1;
+    //endregion
+
+    //region Memory
+        // Every GL object and CPU buffer below is reported here, memory pressure trims through it
+        private final GLResourceManager resources;
+        private volatile boolean cpuTrimRequested;
+    //endregion
+
+    //region Dynamic resolution
+        // Below a scale of 1 the scene goes into the offscreen target and is upscaled in one bilinear pass
+        private final ResolutionController resolutionController = new ResolutionController();
+        private final OffscreenTarget offscreenTarget;
+        private int surfaceWidth;
+        private int surfaceHeight;
     //endregion
 
     //region OpenGL ES2.0 Data
-        // Shader program ID
-        private int backgroundProgramId;
-        private int particleProgramId;
-
-        // Vertex Buffer Object (VBO)
-        private int backgroundVboId;
-        private int dotVboId;
-        private int beamVboId;
-
-        // Texture id for particles
-        private int dotTextureId;
-        private int beamTextureId;
-
-        // Projection matrix
-        private final float[] mvpMatrix = new float[16];
-
-        // Scaling factor
-        private float scaleSize;
-
-        // Background program locations
-        private int aBackgroundPositionLocation;
-        private int aBackgroundColorLocation;
-        private int uBackgroundXOffsetLocation;
-
-        // Particle program locations
-        private int aParticlePositionLocation;
-        private int uParticleMVPMatrixLocation;
-        private int uParticleScaleLocation;
-        private int uParticleXOffsetLocation;
-        private int uParticleTextureLocaiton;
+        // Issues the frames, everything here only creates what it draws with
+        private final SceneRenderer sceneRenderer;
+
+        // Linked programs survive context loss on disk, shader sources in memory
+        private final ProgramBinaryCache programCache;
+        private final HashMap<Integer, String> shaderSources = new HashMap<Integer, String>();
+
+        // Shader sources and atlas pixels are prepared in the background, frames only clear until they are.
+        // Both are shared with the service's other engines, as are the atlas texture and background buffers
+        private final AssetCache assetCache;
+        private final AssetPreloader assetPreloader;
+        private final EglShareGroup shareGroup;
+        private boolean resourcesReady;
+
+        // Indexed background mesh, views into the mapped scene
+        private final PackedMesh backgroundMesh;
+
+        // Texture atlas id for particles, dot in the left tile and beam in the right one
+        // The ETC1 asset is built from the same sprites by :app:compileSpriteAtlas with this tile size
+        static final int ATLAS_TILE_SIZE = 128;
+        static final String PARTICLE_ATLAS_ASSET = "particles.ktx";
+
+        // Only set while this context's own upload is the atlas in use, 0 when another context of the group owns it
+        private long particleTextureBytes;
     //endregion
 
-    public PhaseBeamRenderer(Context context)
+    public PhaseBeamRenderer(Context context, AssetCache assetCache, EglShareGroup shareGroup)
+    {
+        this(context, assetCache, shareGroup, DEFAULT_SCENE_ASSET, new AndroidGL());
+    }
+
+    // Takes the GL implementation to draw with, SceneRenderer's frames can be recorded on their own in JVM tests.
+    // Holds a reference on the asset cache until release
+    public PhaseBeamRenderer(Context context, AssetCache assetCache, EglShareGroup shareGroup, String sceneAsset, GLApi gl)
     {
         this.context = context;
+        this.assetCache = assetCache;
+        this.shareGroup = shareGroup;
+        this.sceneAsset = sceneAsset;
+
+        assetCache.acquire();
+        this.assetPreloader = assetCache.getPreloader();
+        this.scene = assetCache.getScene(sceneAsset);
+
+        this.glCounters = new CountingGL(gl);
+        this.gl = new StateCacheGL(glCounters);
+        this.gpuTimer = new GpuTimer(this.gl);
+        this.resources = new GLResourceManager(this.gl);
+        this.offscreenTarget = new OffscreenTarget(this.gl, resources);
+        this.particleManager = new ParticleManager(scene);
+        this.backgroundMesh = scene.getBackgroundMesh();
+        this.sceneRenderer = new SceneRenderer(this.gl, resources, particleManager, backgroundMesh, AndroidGL.supportsVbo());
+        this.requestedParticleCount = particleManager.getParticleCount();
+        this.programCache = new ProgramBinaryCache(context.getCacheDir());
+
+        trackCpuBuffers();
     }
 
     //region Surface handling
         @Override
-        public void onSurfaceCreated(GL10 gl, EGLConfig config)
+        public void onSurfaceCreated(GL10 unused, EGLConfig config)
         {
+            // Nothing cached about the previous context applies to this one
+            gl.reset();
+            resources.forgetAll();
+
             // Set the clear color
-            GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+            gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
 
             // Enable blending for transparency
-            GLES20.glEnable(GLES20.GL_BLEND);
-            GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE);
+            gl.glEnable(GLES20.GL_BLEND);
+            gl.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE);
 
-            try {
-                setupBackground();
+            gpuTimer.create();
+            programCache.create();
+            offscreenTarget.create();
+            particleTextureBytes = 0;
 
-                setupParticles();
-            }
-            catch (Exception ignored) {}
+            // Programs, buffers and textures are created on the first frame the preloaded assets are there
+            resourcesReady = false;
         }
 
         @Override
-        public void onSurfaceChanged(GL10 gl, int width, int height)
+        public void onSurfaceChanged(GL10 unused, int width, int height)
         {
-            GLES20.glViewport(0, 0, width, height);
-            setupProjectionMatrix(width, height);
-            scaleSize = densityDPI / 240.0f;
+            // The viewport follows the render scale, so it is set every frame
+            surfaceWidth = width;
+            surfaceHeight = height;
+            sceneRenderer.setSurfaceSize(width, height);
+            particleManager.setTouchViewport(width, height);
         }
     //endregion
 
+    // Stops the particle update workers and lets go of the shared assets once the engine goes away
+    public void release()
+    {
+        particleManager.release();
+        assetCache.release();
+    }
+
+    // Safe from any thread, the GL thread drops its CPU-side copies before the next frame
+    public void trimMemory()
+    {
+        cpuTrimRequested = true;
+    }
+
+    // EglRenderThread under memory pressure while hidden, or on exit. Whatever gets drawn next is set up again
+    // on a new context, from the mapped assets and the program binary cache
+    @Override
+    public void onContextReleasing()
+    {
+        long released = resources.releaseAll();
+        resourcesReady = false;
+
+        trimCpuBuffers();
+        sceneRenderer.releaseCpuBuffers();
+
+        Log.d(TAG, "released " + released + "B of GL objects");
+    }
+
+    // Called from the binder thread by dumpsys while frames keep rendering
+    public void dump(PrintWriter out, String prefix)
+    {
+        frameStats.dump(out, prefix);
+
+        out.print(prefix);
+        out.println("  render scale " + resolutionController.getScale() + " (max " + resolutionController.getMaxScale() + ")");
+
+        glCounters.getLastFrame().dump(out, prefix + "  last frame gl: ");
+
+        out.print(prefix);
+        out.println("  redundant gl calls skipped " + gl.getSkippedCalls());
+
+        if (!gpuTimer.isSupported())
+        {
+            out.print(prefix);
+            out.println("  gpu timing needs an ES 3 context with EXT_disjoint_timer_query");
+        }
+
+        resources.dump(out, prefix + "  memory ");
+
+        out.print(prefix);
+        out.println("  preloaded assets " + assetCache.getCpuBytes() + "B");
+    }
+
     //region Setters
         public void setDensityDPI(int densityDPI)
         {
             this.densityDPI = densityDPI;
         }
 
+        // Called on the UI thread for every scroll event, the GL thread picks up the latest one
         public void setOffset(float xOffset, float yOffset, int xPixels, int yPixels)
         {
-            particleManager.setXOffset(xOffset);
+            particleManager.setXOffset(xOffset, System.nanoTime());
         }
-    //endregion
 
-    //region Draw handling
-        @Override
-        public void onDrawFrame(GL10 gl)
+        // Called on the UI thread per pointer, action is one of the TouchQueue actions and x and y are surface pixels
+        public void queueTouch(int action, int pointerId, float x, float y)
         {
-            long endTime = SystemClock.uptimeMillis();
-            long deltaTime = endTime - startTime;
-            startTime = SystemClock.uptimeMillis();
+            particleManager.queueTouch(action, pointerId, x, y);
+        }
 
-            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        // Called on the UI thread when the engine stops receiving touches, so no finger stays pressed
+        public void clearTouches()
+        {
+            particleManager.clearTouches();
+        }
 
-            particleManager.tickXOffset();
-            drawBackground();
+        // Called from the governor on the UI thread, applied at the start of the next frame
+        public void setQualityTier(QualityTier tier)
+        {
+            particleFraction = tier.particleFraction;
+            resolutionController.setMaxScale(tier.renderScale);
+        }
 
-            // Update and draw dots
-            particleManager.updateParticles(deltaTime);
-            drawParticle(particleManager.getParticleData(), dotVboId, dotTextureId);
-            drawParticle(particleManager.getBeamData(), beamVboId, beamTextureId);
+        // How many pairs the scene itself spawns
+        public int getSceneParticleCount()
+        {
+            return scene.pairCount;
         }
-    //endregion
 
-    //region Drawing functions
-        private void setupBackground()
+        // Safe from any thread, the particle arrays are resized at the start of the next frame
+        public void setParticleCount(int particleCount)
         {
-            backgroundProgramId = setupProgram(R.raw.bg_vs, R.raw.bg_fs);
+            requestedParticleCount = particleCount;
+        }
 
-            // Fetch shader locations as Mali/Adreno sort these differently
-            aBackgroundPositionLocation = GLES20.glGetAttribLocation(backgroundProgramId, "aPosition");
-            aBackgroundColorLocation = GLES20.glGetAttribLocation(backgroundProgramId, "aColor");
-            uBackgroundXOffsetLocation = GLES20.glGetAttribLocation(backgroundProgramId, "uXOffset");
+        // Takes effect on the next frame, switching rebuilds the particle program
+        public void setAnimationMode(int animationMode)
+        {
+            this.animationMode = animationMode;
+        }
 
-            Log.d(TAG, "background position location: " + aBackgroundPositionLocation);
-            Log.d(TAG, "background color location: " + aBackgroundColorLocation);
-            Log.d(TAG, "background offset location: " + uBackgroundXOffsetLocation);
+        // Sets the frame budget used to judge dropped frames and the render scale
+        public void setTargetFps(int targetFps)
+        {
+            frameStats.setTargetFps(targetFps);
+            resolutionController.setTargetFps(targetFps);
+        }
 
-            // Create VBO and upload vertex data
-            int[] buffers = new int[1];
-            GLES20.glGenBuffers(1, buffers, 0);
-            backgroundVboId = buffers[0];
+        // Off pins the render scale to the quality tier's
+        public void setAdaptiveResolution(boolean adaptive)
+        {
+            resolutionController.setAdaptive(adaptive);
+        }
+    //endregion
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD)
+    //region Draw handling
+        @Override
+        public void onDrawFrame(GL10 unused)
+        {
+            if (cpuTrimRequested)
             {
-                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, backgroundVboId);
-                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, BackgroundManager.vertexData.length * 4,
-                        FloatBuffer.wrap(BackgroundManager.vertexData), GLES20.GL_STATIC_DRAW);
+                trimCpuBuffers();
             }
 
-            // position
-            GLES20.glEnableVertexAttribArray(aBackgroundPositionLocation);
+            // A black frame shows up right away, waiting for the assets would keep the old surface contents
+            if (!resourcesReady)
+            {
+                if (assetPreloader.isDone())
+                {
+                    setupResources();
+                }
 
-            // color
-            GLES20.glEnableVertexAttribArray(aBackgroundColorLocation);
-        }
+                if (!resourcesReady)
+                {
+                    gl.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+                    return;
+                }
+            }
 
-        private void setupParticles()
-        {
-            particleProgramId = setupProgram(R.raw.dot_vs, R.raw.dot_fs);
+            long frameStart = System.nanoTime();
+            glCounters.beginFrame();
+
+            long frameInterval = frameStats.recordFrameStart(frameStart);
+            long gpuTime = gpuTimer.collect(frameStats.gpu);
+
+            if (gpuTime >= 0)
+            {
+                lastGpuTime = gpuTime;
+            }
 
-            // Fetch shader locations as Mali/Adreno sort these differently
-            aParticlePositionLocation = GLES20.glGetAttribLocation(particleProgramId, "aPosition");
-            uParticleMVPMatrixLocation = GLES20.glGetUniformLocation(particleProgramId, "uMVPMatrix");
-            uParticleScaleLocation = GLES20.glGetUniformLocation(particleProgramId, "uScaleSize");
-            uParticleXOffsetLocation = GLES20.glGetUniformLocation(particleProgramId, "uXOffset");
-            uParticleTextureLocaiton = GLES20.glGetUniformLocation(particleProgramId, "uTexture");
+            // Advanced on every frame so switching animation modes doesn't count as a long frame
+            int simulationSteps = simulationClock.advance(frameStart);
 
-            Log.d(TAG, "particle position location: " + aParticlePositionLocation);
-            Log.d(TAG, "particle matrix location: " + uParticleMVPMatrixLocation);
-            Log.d(TAG, "particle scale location: " + uParticleScaleLocation);
-            Log.d(TAG, "particle offset location: " + uParticleXOffsetLocation);
-            Log.d(TAG, "particle texture location: " + uParticleTextureLocaiton);
+            gpuTimer.begin();
 
-            // Create VBO and upload vertex data
-            int[] buffers = new int[2];
-            GLES20.glGenBuffers(2, buffers, 0);
+            boolean offscreen = bindSceneTarget(resolutionController.update(frameInterval, lastGpuTime));
 
-            // Load particle texture
-            dotTextureId = loadTexture(R.drawable.dot);
-            beamTextureId = loadTexture(R.drawable.beam);
+            sceneRenderer.applyParticleCount(requestedParticleCount, particleFraction);
 
-            // Create particle VBO
-            dotVboId = buffers[0];
-            beamVboId = buffers[1];
+            if (sceneRenderer.needsParticleProgram(animationMode, spriteMode))
+            {
+                resources.delete(GLResourceManager.PROGRAM, sceneRenderer.getParticleProgramId());
+                setupParticleProgram();
+            }
 
+            sceneRenderer.drawScene(frameStart, simulationSteps, simulationClock.getAlpha());
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD)
+            if (offscreen)
             {
-                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, dotVboId);
-                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, particleManager.getParticleArrayDataSize(),
-                        FloatBuffer.wrap(particleManager.getParticleData()), GLES20.GL_DYNAMIC_DRAW);
+                sceneRenderer.drawUpscale(offscreenTarget.getTextureId(), surfaceWidth, surfaceHeight);
+            }
+
+            gpuTimer.end();
 
-                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, beamVboId);
-                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, particleManager.getParticleArrayDataSize(),
-                        FloatBuffer.wrap(particleManager.getBeamData()), GLES20.GL_DYNAMIC_DRAW);
+            long simulationTime = sceneRenderer.getSimulationNanos();
+            long uploadTime = sceneRenderer.getUploadNanos();
+
+            // Everything that isn't simulation or upload counts as draw submission
+            if (sceneRenderer.getAnimationMode() == SceneRenderer.ANIMATION_CPU)
+            {
+                frameStats.simulation.record(simulationTime);
+                frameStats.upload.record(uploadTime);
             }
 
-            // Pass float x, y and z
-            GLES20.glEnableVertexAttribArray(aParticlePositionLocation);
+            frameStats.draw.record(System.nanoTime() - frameStart - simulationTime - uploadTime);
         }
+    //endregion
 
-        private void drawBackground()
+    //region Resource setup
+        // Returns true when the scene goes into the offscreen target and has to be upscaled afterwards
+        private boolean bindSceneTarget(float scale)
         {
-            GLES20.glUseProgram(backgroundProgramId);
-
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD)
+            if (scale < 1.0f)
             {
-                // Bind VBO and enable vertex attributes
-                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, backgroundVboId);
+                int width = Math.max(1, Math.round(surfaceWidth * scale));
+                int height = Math.max(1, Math.round(surfaceHeight * scale));
 
-                int[] bufferSize = new int[1];
-                GLES20.glGetBufferParameteriv(GLES20.GL_ARRAY_BUFFER, GLES20.GL_BUFFER_SIZE, bufferSize, 0);
+                if (offscreenTarget.resize(width, height))
+                {
+                    offscreenTarget.bind();
 
-                if (bufferSize[0] == 0) {
-                    ByteBuffer nativeByteBuffer = ByteBuffer.allocateDirect(BackgroundManager.vertexDataSize);
-                    nativeByteBuffer.order(ByteOrder.nativeOrder());
+                    // Point sizes are in pixels, so they shrink along with the target
+                    sceneRenderer.setRenderTarget(width, height, densityDPI / 240.0f * scale);
+                    return true;
+                }
+            }
 
-                    FloatBuffer backgroundVertexDataBuffer = nativeByteBuffer.asFloatBuffer();
-                    backgroundVertexDataBuffer.put(BackgroundManager.vertexData).position(0);
+            offscreenTarget.release();
 
-                    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, BackgroundManager.vertexDataSize,
-                            backgroundVertexDataBuffer, GLES20.GL_STATIC_DRAW);
-                }
+            gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+            gl.glViewport(0, 0, surfaceWidth, surfaceHeight);
+            sceneRenderer.setRenderTarget(surfaceWidth, surfaceHeight, densityDPI / 240.0f);
+            return false;
+        }
 
-                // position
-                GLES20.glVertexAttribPointer(aBackgroundPositionLocation, 2, GLES20.GL_FLOAT, false, 20, 0);
+        // A failure gives back whatever was created so far and leaves the next frame to try again
+        private void setupResources()
+        {
+            try
+            {
+                setupBackground();
+
+                chooseSpriteMode();
+                setupParticles();
 
-                // color
-                GLES20.glVertexAttribPointer(aBackgroundColorLocation, 3, GLES20.GL_FLOAT, false, 20, 8);
+                setupBlit();
+
+                resourcesReady = true;
             }
-            else
+            catch (RuntimeException e)
             {
-                ByteBuffer nativeByteBuffer = ByteBuffer.allocateDirect(BackgroundManager.vertexDataSize);
-                nativeByteBuffer.order(ByteOrder.nativeOrder());
+                Log.e(TAG, "resource setup failed", e);
+                resources.releaseAll();
+            }
+
+            // The texture loaders bind through GLES20 directly
+            gl.invalidate();
+        }
 
-                FloatBuffer backgroundVertexDataBuffer = nativeByteBuffer.asFloatBuffer();
-                backgroundVertexDataBuffer.put(BackgroundManager.vertexData).position(0);
+        private void setupBackground()
+        {
+            int backgroundProgramId = setupProgram(R.raw.bg_vs, R.raw.bg_fs);
+            int backgroundVboId = 0;
+            int backgroundIndexVboId = 0;
 
-                // position x, y
-                GLES20.glVertexAttribPointer(aBackgroundPositionLocation, 2, GLES20.GL_FLOAT, false, 20, backgroundVertexDataBuffer);
+            // Static VBOs, uploaded once for the whole share group
+            if (AndroidGL.supportsVbo())
+            {
+                backgroundVboId = shareGroup.getOrCreate(sceneAsset + " background vertices", new StaticBufferFactory(
+                        GLES20.GL_ARRAY_BUFFER, backgroundMesh.getVertexDataSize(), backgroundMesh.vertices));
+                backgroundIndexVboId = shareGroup.getOrCreate(sceneAsset + " background indices", new StaticBufferFactory(
+                        GLES20.GL_ELEMENT_ARRAY_BUFFER, backgroundMesh.getIndexDataSize(), backgroundMesh.indices));
 
-                // color r, g, b
-                GLES20.glVertexAttribPointer(aBackgroundColorLocation, 3, GLES20.GL_FLOAT, false, 20, backgroundVertexDataBuffer.position(2));
+                trackGroupObject(GLResourceManager.BUFFER, backgroundVboId, backgroundMesh.getVertexDataSize());
+                trackGroupObject(GLResourceManager.BUFFER, backgroundIndexVboId, backgroundMesh.getIndexDataSize());
             }
 
-            // xOffset
-            GLES20.glUniform1f(uBackgroundXOffsetLocation, particleManager.backgroundXOffset);
+            sceneRenderer.setBackground(backgroundProgramId, backgroundVboId, backgroundIndexVboId);
 
-            // Draw the vertices
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, BackgroundManager.vertexCount);
+            Log.d(TAG, "background program: " + backgroundProgramId);
         }
 
-        private void drawParticle(float[] particleData, int vboId, int textureId) {
-            // Render particles
-            GLES20.glUseProgram(particleProgramId);
+        // What the share group hands out stays with the group, anything this context created alone is its own
+        private void trackGroupObject(int kind, int name, long bytes)
+        {
+            if (shareGroup.isMember())
+            {
+                resources.trackShared(kind, name, bytes);
+            }
+            else
+            {
+                resources.track(kind, name, bytes);
+            }
+        }
 
-            ByteBuffer nativeByteBuffer = ByteBuffer.allocateDirect(particleManager.getParticleArrayDataSize());
-            nativeByteBuffer.order(ByteOrder.nativeOrder());
+        private class StaticBufferFactory implements EglShareGroup.Factory
+        {
+            private final int target;
+            private final int size;
+            private final ByteBuffer data;
 
-            FloatBuffer particleVertexDataBuffer = nativeByteBuffer.asFloatBuffer();
-            particleVertexDataBuffer.put(particleData).position(0);
+            StaticBufferFactory(int target, int size, ByteBuffer data)
+            {
+                this.target = target;
+                this.size = size;
+                this.data = data;
+            }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD)
+            @Override
+            public int create()
             {
-                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboId);
+                int[] buffers = new int[1];
+                gl.glGenBuffers(1, buffers, 0);
+
+                gl.glBindBuffer(target, buffers[0]);
+                gl.glBufferData(target, size, data.position(0), GLES20.GL_STATIC_DRAW);
+
+                return buffers[0];
+            }
 
-                int[] bufferSize = new int[1];
-                GLES20.glGetBufferParameteriv(GLES20.GL_ARRAY_BUFFER, GLES20.GL_BUFFER_SIZE, bufferSize, 0);
+            @Override
+            public void delete(int buffer)
+            {
+                gl.glDeleteBuffers(1, new int[] {buffer}, 0);
+            }
+        }
 
-                if (bufferSize[0] == 0 || bufferSize[0] < particleManager.getParticleArrayDataSize())
+        private void setupParticles()
+        {
+            // Create particle VBOs and upload the initial vertex data
+            sceneRenderer.createBuffers();
+
+            int particleTextureId = shareGroup.getOrCreate(PARTICLE_ATLAS_ASSET, new EglShareGroup.Factory()
+            {
+                @Override
+                public int create()
                 {
-                    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, particleManager.getParticleArrayDataSize(),
-                            particleVertexDataBuffer, GLES20.GL_STATIC_DRAW);
+                    return loadParticleAtlas();
                 }
-                else
+
+                @Override
+                public void delete(int texture)
                 {
-                    GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, particleManager.getParticleArrayDataSize(), particleVertexDataBuffer);
+                    gl.glDeleteTextures(1, new int[] {texture}, 0);
+                    particleTextureBytes = 0;
                 }
+            });
+            trackGroupObject(GLResourceManager.TEXTURE, particleTextureId, particleTextureBytes);
+            sceneRenderer.setParticleTexture(particleTextureId);
+
+            setupParticleProgram();
+        }
+
+        // The decoded PNGs are only used if the compressed atlas can't be
+        private int loadParticleAtlas()
+        {
+            ByteBuffer compressedAtlas = assetPreloader.getCompressedAtlas();
+            int textureId = compressedAtlas != null ? CompressedTextureLoader.load(compressedAtlas)
+                    : CompressedTextureLoader.load(context.getAssets(), PARTICLE_ATLAS_ASSET);
+
+            // ETC1 is 4 bits per pixel, a full mip chain adds a third
+            long levelBytes = (long) assetPreloader.getAtlasWidth() * assetPreloader.getAtlasHeight() * (textureId != 0 ? 1 : 8) / 2;
+            particleTextureBytes = levelBytes * 4 / 3;
+
+            return textureId != 0 ? textureId : loadAtlasTexture();
+        }
+
+        // Drivers clamp point sizes to their own limit, which can be below what the nearest particles need at
+        // this density. Quads have no such limit but cost four vertices per particle, so they are only used then
+        private void chooseSpriteMode()
+        {
+            int[] pointSizeRange = new int[2];
+            gl.glGetIntegerv(GLES20.GL_ALIASED_POINT_SIZE_RANGE, pointSizeRange, 0);
 
-                // Pass float x, y and z
-                GLES20.glVertexAttribPointer(aParticlePositionLocation, 3, GLES20.GL_FLOAT, false, 12, 0);
+            float[] particleData = particleManager.getParticleData();
+            float maxZ = 0.0f;
+
+            for (int i = 2; i < particleData.length; i += particleManager.getParticlePropertyCount())
+            {
+                maxZ = Math.max(maxZ, particleData[i]);
+            }
+
+            // The same size dot_vs.glsl gives the point at full resolution
+            float largestPoint = maxZ * 7.0f * densityDPI / 240.0f;
+
+            spriteMode = pointSizeRange[1] < largestPoint ? SceneRenderer.SPRITE_QUADS : SceneRenderer.SPRITE_POINTS;
+
+            Log.d(TAG, "point size limit " + pointSizeRange[1] + ", largest point " + largestPoint + ", sprites " + spriteMode);
+        }
+
+        private void setupBlit()
+        {
+            int blitProgramId = setupProgram(R.raw.blit_vs, R.raw.blit_fs);
+            sceneRenderer.setBlitProgram(blitProgramId);
+
+            Log.d(TAG, "blit program: " + blitProgramId);
+        }
+
+        // Builds the particle program for the requested modes, the GPU animation seeds start from it
+        private void setupParticleProgram()
+        {
+            int animationMode = this.animationMode;
+            int spriteMode = this.spriteMode;
+            int particleProgramId;
+
+            if (animationMode == SceneRenderer.ANIMATION_GPU)
+            {
+                particleProgramId = setupProgram(R.raw.dot_vs, R.raw.dot_fs, "#define GPU_ANIMATION\n");
+            }
+            else if (SceneRenderer.drawsQuads(animationMode, spriteMode))
+            {
+                particleProgramId = setupProgram(R.raw.dot_vs, R.raw.sprite_fs, "#define QUAD_SPRITES\n");
             }
             else
             {
-                // Pass float x, y and z
-                GLES20.glVertexAttribPointer(aParticlePositionLocation, 3, GLES20.GL_FLOAT, false, 12, particleVertexDataBuffer);
+                particleProgramId = setupProgram(R.raw.dot_vs, R.raw.dot_fs);
             }
 
-            // Pass view matrix
-            GLES20.glUniformMatrix4fv(uParticleMVPMatrixLocation, 1, false, mvpMatrix, 0);
+            sceneRenderer.setParticleProgram(particleProgramId, animationMode, spriteMode);
 
-            // Pass scale size
-            GLES20.glUniform1f(uParticleScaleLocation, scaleSize);
+            Log.d(TAG, "particle program: " + particleProgramId + " animation " + animationMode + " sprites " + spriteMode);
+        }
 
-            // Pass x offset
-            GLES20.glUniform1f(uParticleXOffsetLocation, particleManager.particleXOffset);
+        // Only what gets rebuilt on demand goes: shader sources are read again, the scene drops its staging copies
+        private void trimCpuBuffers()
+        {
+            cpuTrimRequested = false;
+            shaderSources.clear();
+            sceneRenderer.trimCpuBuffers();
+            trackCpuBuffers();
+        }
 
-            // Bind particle texture
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-            GLES20.glUniform1i(uParticleTextureLocaiton, 0);
+        // The scene renderer reports the particle and vertex arrays itself
+        private void trackCpuBuffers()
+        {
+            long shaderBytes = 0;
 
-            GLES20.glDrawArrays(GLES20.GL_POINTS, 0, particleManager.getParticleCount());
+            for (String source : shaderSources.values())
+            {
+                shaderBytes += source.length() * 2L;
+            }
+
+            resources.trackCpu("shaders", shaderBytes);
         }
     //endregion
 
     //region OpenGL helper functions
         private int setupProgram(int vertexShaderResourceId, int fragmentShaderResourceId1)
         {
-            String vertexShaderSource = loadShaderSource(context.getResources(), vertexShaderResourceId);
-            String fragmentShaderSource = loadShaderSource(context.getResources(), fragmentShaderResourceId1);
+            return setupProgram(vertexShaderResourceId, fragmentShaderResourceId1, "");
+        }
+
+        // The defines are prepended to both shaders to select optional code paths
+        private int setupProgram(int vertexShaderResourceId, int fragmentShaderResourceId1, String defines)
+        {
+            String vertexShaderSource = defines + loadShaderSource(vertexShaderResourceId);
+            String fragmentShaderSource = defines + loadShaderSource(fragmentShaderResourceId1);
+
+            int cachedProgram = programCache.load(vertexShaderSource, fragmentShaderSource);
+
+            if (cachedProgram != 0)
+            {
+                resources.track(GLResourceManager.PROGRAM, cachedProgram, 0);
+                return cachedProgram;
+            }
 
             int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, vertexShaderSource);
             int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderSource);
 
-            int tempStore = GLES20.glCreateProgram();
-            GLES20.glAttachShader(tempStore, vertexShader);
-            GLES20.glAttachShader(tempStore, fragmentShader);
-            GLES20.glLinkProgram(tempStore);
+            int tempStore = gl.glCreateProgram();
+            gl.glAttachShader(tempStore, vertexShader);
+            gl.glAttachShader(tempStore, fragmentShader);
+            programCache.prepareForStore(tempStore);
+            gl.glLinkProgram(tempStore);
 
             int[] linkStatus = new int[1];
-            GLES20.glGetProgramiv(tempStore, GLES20.GL_LINK_STATUS, linkStatus, 0);
+            gl.glGetProgramiv(tempStore, GLES20.GL_LINK_STATUS, linkStatus, 0);
             if (linkStatus[0] == 0)
             {
-                String error = GLES20.glGetProgramInfoLog(tempStore);
+                String error = gl.glGetProgramInfoLog(tempStore);
                 throw new RuntimeException("Program linking failed: " + error);
             }
 
+            programCache.store(tempStore, vertexShaderSource, fragmentShaderSource);
+
+            // Only flagged while attached, the driver frees them along with the program
+            gl.glDeleteShader(vertexShader);
+            gl.glDeleteShader(fragmentShader);
+
+            // Drivers don't report program sizes, so they only show up in the count
+            resources.track(GLResourceManager.PROGRAM, tempStore, 0);
+
             return tempStore;
         }
 
         private int compileShader(int type, String source)
         {
-            int shader = GLES20.glCreateShader(type);
-            GLES20.glShaderSource(shader, source);
-            GLES20.glCompileShader(shader);
+            int shader = gl.glCreateShader(type);
+            gl.glShaderSource(shader, source);
+            gl.glCompileShader(shader);
 
             int[] compiled = new int[1];
-            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+            gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
             if (compiled[0] == 0)
             {
-                String error = GLES20.glGetShaderInfoLog(shader);
-                GLES20.glDeleteShader(shader);
+                String error = gl.glGetShaderInfoLog(shader);
+                gl.glDeleteShader(shader);
                 throw new RuntimeException("Shader compilation failed: " + error);
             }
 
             return shader;
         }
 
-        private String loadShaderSource(Resources resources, int resourceId)
+        // Preloaded sources are normally there already, reading on the GL thread is the fallback
+        private String loadShaderSource(int resourceId)
         {
-            InputStream inputStream = resources.openRawResource(resourceId);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            StringBuilder shaderSource = new StringBuilder();
+            String shaderSource = shaderSources.get(resourceId);
 
-            try
-            {
-                String line;
-                while ((line = reader.readLine()) != null)
-                {
-                    shaderSource.append(line).append("\n");
-                }
-            }
-            catch (IOException e)
-            {
-                throw new RuntimeException("Failed to read shader source: " + e.getMessage());
-            }
-            finally
+            if (shaderSource == null)
             {
-                try
+                shaderSource = assetPreloader.getShaderSource(resourceId);
+
+                if (shaderSource == null)
                 {
-                    inputStream.close();
+                    shaderSource = AssetPreloader.readShaderSource(context.getResources(), resourceId);
                 }
-                catch (IOException ignored) {}
+
+                shaderSources.put(resourceId, shaderSource);
+                trackCpuBuffers();
             }
 
-            return shaderSource.toString();
+            return shaderSource;
         }
 
-        private int loadTexture(int resourceId)
+        private int loadAtlasTexture()
         {
+            ByteBuffer pixels = assetPreloader.getAtlasPixels();
+
+            if (pixels == null)
+            {
+                pixels = AssetPreloader.decodeAtlas(context.getResources(), ATLAS_TILE_SIZE, R.drawable.dot, R.drawable.beam);
+            }
+
             // Generate a texture ID
             final int[] textureHandle = new int[1];
-            GLES20.glGenTextures(1, textureHandle, 0);
+            gl.glGenTextures(1, textureHandle, 0);
 
             if (textureHandle[0] != 0)
             {
-                // Load the texture resource as a Bitmap
-                final BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inScaled = false; // No pre-scaling
-                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                final Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
-
                 // Bind to the texture ID
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+                gl.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
 
                 // Set texture parameters
-                GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-                GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-                GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-                GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+                gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_NEAREST);
+                gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+                gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+                gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
 
-                // Load the bitmap into the bound texture
-                GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+                // Load the atlas into the bound texture, preloaded pixels stay around for the next context
+                gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, assetPreloader.getAtlasWidth(), assetPreloader.getAtlasHeight(),
+                        0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels.position(0));
 
-                // Recycle the bitmap, as it's no longer needed
-                bitmap.recycle();
+                // Points shrink to a few pixels, the atlas is a power of two so ES 2 can build the chain
+                gl.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
             }
             else
             {
@@ -424,25 +705,5 @@ public class PhaseBeamRenderer implements GLSurfaceView.Renderer
 
             return textureHandle[0];
         }
-
-        private void setupProjectionMatrix(int width, int height)
-        {
-            float aspectRatio;
-            if (width > height)
-            {
-                aspectRatio = (float) height / width;
-                Matrix.frustumM(mvpMatrix, 0, -aspectRatio, aspectRatio, -1.0f, 1.0f, 1.0f, 100.0f);
-            }
-            else
-            {
-                aspectRatio = (float) width / height;
-                Matrix.frustumM(mvpMatrix, 0, -1.0f, 1.0f, -aspectRatio, aspectRatio, 1.0f, 100.0f);
-            }
-
-            // Apply additional transformations like the original code
-            Matrix.rotateM(mvpMatrix, 0, 180.0f, 0.0f, 1.0f, 0.0f);
-            Matrix.scaleM(mvpMatrix, 0, -1.0f, 1.0f, 1.0f);
-            Matrix.translateM(mvpMatrix, 0, 0.0f, 0.0f, 1.0f);
-        }
     //endregion
 }
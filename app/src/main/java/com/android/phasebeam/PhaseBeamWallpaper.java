@@ -6,19 +6,45 @@ import android.content.pm.ConfigurationInfo;
 import android.graphics.PixelFormat;
 import android.os.Build;
 import android.util.DisplayMetrics;
+import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 import android.view.WindowManager;
 
 public class PhaseBeamWallpaper extends GLWallpaperService
 {
+    // How many times the scene's own particles to run while charging, on devices with cores to spare. The scene's
+    // 26 pairs become 4160, twice ParticleManager.PARALLEL_THRESHOLD, so the update runs on the worker pool
+    private static final int DENSE_PARTICLE_FACTOR = 160;
+
+    // Shared by the picker preview and every home and lock screen engine of the process
+    private AssetCache assetCache;
+
+    @Override
+    public void onCreate()
+    {
+        super.onCreate();
+        assetCache = new AssetCache(this);
+    }
+
+    // The engines trim what they hold themselves, renderers that miss the preloaded assets later read them again
+    @Override
+    public void onTrimMemory(int level)
+    {
+        super.onTrimMemory(level);
+        assetCache.trimMemory();
+    }
+
     @Override
     public Engine onCreateEngine()
     {
         return new PhaseBeamEngine();
     }
 
-    private class PhaseBeamEngine extends GLWallpaperService.GLEngine
+    private class PhaseBeamEngine extends GLWallpaperService.GLEngine implements QualityGovernor.Listener
     {
+        private QualityGovernor qualityGovernor;
+        private int denseParticleCount;
+
         @Override
         public void onCreate(SurfaceHolder surfaceHolder)
         {
@@ -38,11 +64,32 @@ public class PhaseBeamWallpaper extends GLWallpaperService
 
                 setPreserveEGLContextOnPause(true);
 
-                setEGLConfigChooser(8, 8, 8, 8, 16, 0);
+                boolean lowRamDevice = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && activityManager.isLowRamDevice();
 
-                renderer = new PhaseBeamRenderer(PhaseBeamWallpaper.this);
+                // The scene is blended back to front onto an opaque surface, so neither alpha nor depth is needed
+                if (lowRamDevice)
+                {
+                    surfaceHolder.setFormat(PixelFormat.RGB_565);
+                    setEGLConfigChooser(5, 6, 5, 0, 0, 0);
+                }
+                else
+                {
+                    setEGLConfigChooser(8, 8, 8, 0, 0, 0);
+                }
+
+                // The first engine starts reading the shaders and decoding the atlas in the background, well before
+                // the surface exists, later ones find them ready
+                renderer = new PhaseBeamRenderer(PhaseBeamWallpaper.this, assetCache, shareGroup);
                 setRenderer(renderer);
 
+                // Low-RAM devices come with the slowest CPUs, there the vertex shader moves the particles. Touches only
+                // push particles the CPU moves, so they aren't even delivered then
+                if (lowRamDevice)
+                {
+                    renderer.setAnimationMode(SceneRenderer.ANIMATION_GPU);
+                    setTouchEventsEnabled(false);
+                }
+
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R)
                 {
                     renderer.setDensityDPI(getResources().getDisplayMetrics().densityDpi);
@@ -53,25 +100,121 @@ public class PhaseBeamWallpaper extends GLWallpaperService
                     ((WindowManager) PhaseBeamWallpaper.this.getApplication().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay().getMetrics(metrics);
                     renderer.setDensityDPI(metrics.densityDpi);
                 }
+
+                boolean spareCores = !lowRamDevice && Runtime.getRuntime().availableProcessors() >= 4;
+                denseParticleCount = renderer.getSceneParticleCount() * (spareCores ? DENSE_PARTICLE_FACTOR : 1);
+
+                qualityGovernor = new QualityGovernor(PhaseBeamWallpaper.this, this);
+                qualityGovernor.start();
             }
         }
 
+        @Override
+        public void onDestroy()
+        {
+            if (qualityGovernor != null)
+            {
+                qualityGovernor.stop();
+            }
+
+            super.onDestroy();
+        }
+
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height)
         {
             super.onSurfaceChanged(holder,  format,  width,  height);
         }
 
+        // The tier's render scale caps the renderer's adaptive offscreen resolution
+        @Override
+        public void onQualityTierChanged(QualityTier tier)
+        {
+            renderer.setQualityTier(tier);
+
+            // Charging renders at the tier's full scale, on battery the scale backs off when frames run late
+            renderer.setAdaptiveResolution(tier != QualityTier.TIERS[QualityTier.TIER_CHARGING]);
+
+            // Only charging pays for the dense scene, every other tier scales down from the scene's own count
+            renderer.setParticleCount(tier == QualityTier.TIERS[QualityTier.TIER_CHARGING]
+                    ? denseParticleCount : renderer.getSceneParticleCount());
+            setTargetFrameRate(tier.targetFps);
+
+            // Before R the display keeps its refresh rate, so at half rate and below the swap holds each frame for two
+            // vsyncs instead of letting a late frame queue up behind the next one
+            setSwapInterval(Build.VERSION.SDK_INT < Build.VERSION_CODES.R && tier.targetFps <= 30 ? 2 : 1);
+        }
+
         @Override
         public void onSurfaceRedrawNeeded(SurfaceHolder holder)
         {
             super.onSurfaceRedrawNeeded(holder);
         }
 
+        // A hidden or lost surface gets no further touch events, including the releases of fingers still down
+        @Override
+        public void onVisibilityChanged(boolean visible)
+        {
+            super.onVisibilityChanged(visible);
+
+            if (!visible && renderer != null)
+            {
+                renderer.clearTouches();
+            }
+        }
+
+        @Override
+        public void onSurfaceDestroyed(SurfaceHolder holder)
+        {
+            if (renderer != null)
+            {
+                renderer.clearTouches();
+            }
+
+            super.onSurfaceDestroyed(holder);
+        }
+
+        // Only primitives are queued, the event itself is recycled by the framework once this returns
+        @Override
+        public void onTouchEvent(MotionEvent event)
+        {
+            super.onTouchEvent(event);
+
+            if (renderer == null)
+            {
+                return;
+            }
+
+            int actionMasked = event.getActionMasked();
+            int actionIndex = event.getActionIndex();
+
+            for (int i = 0; i < event.getPointerCount(); i++)
+            {
+                int action;
+
+                if (actionMasked == MotionEvent.ACTION_CANCEL
+                        || ((actionMasked == MotionEvent.ACTION_UP || actionMasked == MotionEvent.ACTION_POINTER_UP) && i == actionIndex))
+                {
+                    action = TouchQueue.ACTION_UP;
+                }
+                else if ((actionMasked == MotionEvent.ACTION_DOWN || actionMasked == MotionEvent.ACTION_POINTER_DOWN) && i == actionIndex)
+                {
+                    action = TouchQueue.ACTION_DOWN;
+                }
+                else
+                {
+                    action = TouchQueue.ACTION_MOVE;
+                }
+
+                renderer.queueTouch(action, event.getPointerId(i), event.getX(i), event.getY(i));
+            }
+        }
+
         @Override
         public void onOffsetsChanged(float xOffset, float yOffset, float xOffsetStep,
                                      float yOffsetStep, int xPixelOffset, int yPixelOffset) {
             renderer.setOffset(xOffset, yOffset, xPixelOffset, yPixelOffset);
+            requestImmediateFrame();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+package com.android.phasebeam;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Keeps linked program binaries on disk so a new context can skip compiling from source
+public class ProgramBinaryCache
+{
+    private static final String TAG = "ProgramBinaryCache";
+
+    //region Cache data
+        private final File rootDirectory;
+        private final int[] result = new int[1];
+        private File driverDirectory;
+        private boolean supported;
+    //endregion
+
+    public ProgramBinaryCache(File cacheDirectory)
+    {
+        this.rootDirectory = new File(cacheDirectory, "programs");
+    }
+
+    // Must be called on the GL thread whenever a new context has been created
+    public void create()
+    {
+        supported = false;
+
+        // OES_get_program_binary has no Java bindings, so only ES 3 contexts can use the core functions
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+        {
+            return;
+        }
+
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        String renderer = GLES20.glGetString(GLES20.GL_RENDERER);
+
+        if (version == null || renderer == null || !version.startsWith("OpenGL ES 3"))
+        {
+            return;
+        }
+
+        GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, result, 0);
+
+        if (result[0] == 0)
+        {
+            return;
+        }
+
+        // GL_VERSION carries the driver version, binaries from any other driver are useless
+        driverDirectory = new File(rootDirectory, hash(renderer + '\n' + version));
+        deleteStaleDrivers();
+
+        supported = driverDirectory.isDirectory() || driverDirectory.mkdirs();
+    }
+
+    // Returns a linked program, or 0 when there is no usable binary for these sources
+    public int load(String vertexShaderSource, String fragmentShaderSource)
+    {
+        if (!supported)
+        {
+            return 0;
+        }
+
+        File file = entryFile(vertexShaderSource, fragmentShaderSource);
+
+        if (!file.isFile())
+        {
+            return 0;
+        }
+
+        int format;
+        byte[] binary;
+
+        try
+        {
+            DataInputStream input = new DataInputStream(new FileInputStream(file));
+
+            try
+            {
+                format = input.readInt();
+                binary = new byte[input.readInt()];
+                input.readFully(binary);
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        catch (IOException e)
+        {
+            Log.d(TAG, "unreadable program binary: " + e.getMessage());
+            file.delete();
+            return 0;
+        }
+
+        ByteBuffer binaryBuffer = ByteBuffer.allocateDirect(binary.length).order(ByteOrder.nativeOrder());
+        binaryBuffer.put(binary).position(0);
+
+        int programId = GLES20.glCreateProgram();
+        GLES30.glProgramBinary(programId, format, binaryBuffer, binary.length);
+
+        // Drivers reject binaries after updates or for reasons of their own, that just means compiling again
+        GLES20.glGetProgramiv(programId, GLES20.GL_LINK_STATUS, result, 0);
+
+        if (result[0] == 0)
+        {
+            Log.d(TAG, "program binary rejected: " + file.getName());
+            GLES20.glDeleteProgram(programId);
+            file.delete();
+            return 0;
+        }
+
+        Log.d(TAG, "program binary loaded: " + file.getName());
+
+        return programId;
+    }
+
+    // Call before glLinkProgram, some drivers only keep a retrievable binary when asked to
+    public void prepareForStore(int programId)
+    {
+        if (supported)
+        {
+            GLES30.glProgramParameteri(programId, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+    }
+
+    public void store(int programId, String vertexShaderSource, String fragmentShaderSource)
+    {
+        if (!supported)
+        {
+            return;
+        }
+
+        GLES20.glGetProgramiv(programId, GLES30.GL_PROGRAM_BINARY_LENGTH, result, 0);
+        int length = result[0];
+
+        if (length <= 0)
+        {
+            return;
+        }
+
+        ByteBuffer binaryBuffer = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+        int[] format = new int[1];
+        GLES30.glGetProgramBinary(programId, length, result, 0, format, 0, binaryBuffer);
+
+        byte[] binary = new byte[result[0]];
+        binaryBuffer.position(0);
+        binaryBuffer.get(binary);
+
+        File file = entryFile(vertexShaderSource, fragmentShaderSource);
+
+        try
+        {
+            // Written aside and renamed, a preview engine may be storing the same entry right now
+            File temporaryFile = File.createTempFile(file.getName(), ".tmp", driverDirectory);
+            DataOutputStream output = new DataOutputStream(new FileOutputStream(temporaryFile));
+
+            try
+            {
+                output.writeInt(format[0]);
+                output.writeInt(binary.length);
+                output.write(binary);
+            }
+            finally
+            {
+                output.close();
+            }
+
+            if (!temporaryFile.renameTo(file))
+            {
+                temporaryFile.delete();
+            }
+        }
+        catch (IOException e)
+        {
+            Log.d(TAG, "failed to store program binary: " + e.getMessage());
+        }
+    }
+
+    private File entryFile(String vertexShaderSource, String fragmentShaderSource)
+    {
+        return new File(driverDirectory, hash(vertexShaderSource + '\0' + fragmentShaderSource) + ".bin");
+    }
+
+    private void deleteStaleDrivers()
+    {
+        File[] directories = rootDirectory.listFiles();
+
+        if (directories == null)
+        {
+            return;
+        }
+
+        for (File directory : directories)
+        {
+            if (directory.equals(driverDirectory))
+            {
+                continue;
+            }
+
+            File[] entries = directory.listFiles();
+
+            if (entries != null)
+            {
+                for (File entry : entries)
+                {
+                    entry.delete();
+                }
+            }
+
+            directory.delete();
+        }
+    }
+
+    private static String hash(String value)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest)
+            {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("SHA-1 unavailable", e);
+        }
+    }
+}
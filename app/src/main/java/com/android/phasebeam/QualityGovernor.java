@@ -0,0 +1,210 @@
+package com.android.phasebeam;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+public class QualityGovernor extends BroadcastReceiver implements Runnable
+{
+    public interface Listener
+    {
+        void onQualityTierChanged(QualityTier tier);
+    }
+
+    // Stepping down happens right away, stepping back up only once things stayed calm this long
+    private static final long UPGRADE_DELAY_MILLIS = 30000L;
+
+    //region Device state
+        private final Context context;
+        private final Listener listener;
+        private final Handler handler = new Handler();
+        private final PowerManager powerManager;
+        private PowerManager.OnThermalStatusChangedListener thermalListener;
+
+        private int thermalStatus;
+        private boolean powerSaveMode;
+        private boolean charging;
+    //endregion
+
+    //region Tier state
+        private int currentTier = QualityTier.TIER_HIGH;
+        private long calmSince;
+        private boolean started;
+    //endregion
+
+    public QualityGovernor(Context context, Listener listener)
+    {
+        this.context = context;
+        this.listener = listener;
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    public void start()
+    {
+        if (started)
+        {
+            return;
+        }
+
+        started = true;
+
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+        {
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+            powerSaveMode = powerManager.isPowerSaveMode();
+        }
+
+        // The battery broadcast is sticky so this also gives us the current charging state
+        Intent batteryStatus = context.registerReceiver(this, filter);
+
+        if (batteryStatus != null)
+        {
+            charging = batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+        {
+            thermalStatus = powerManager.getCurrentThermalStatus();
+            thermalListener = new PowerManager.OnThermalStatusChangedListener()
+            {
+                @Override
+                public void onThermalStatusChanged(int status)
+                {
+                    thermalStatus = status;
+                    evaluate();
+                }
+            };
+            powerManager.addThermalStatusListener(thermalListener);
+        }
+
+        currentTier = desiredTier();
+        listener.onQualityTierChanged(QualityTier.TIERS[currentTier]);
+    }
+
+    public void stop()
+    {
+        if (!started)
+        {
+            return;
+        }
+
+        started = false;
+        handler.removeCallbacks(this);
+        context.unregisterReceiver(this);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalListener != null)
+        {
+            powerManager.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
+    }
+
+    public QualityTier getCurrentTier()
+    {
+        return QualityTier.TIERS[currentTier];
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent)
+    {
+        if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction()))
+        {
+            charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+        else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+        {
+            powerSaveMode = powerManager.isPowerSaveMode();
+        }
+
+        evaluate();
+    }
+
+    // Delayed re-check for a pending upgrade
+    @Override
+    public void run()
+    {
+        evaluate();
+    }
+
+    private int desiredTier()
+    {
+        int tier = charging ? QualityTier.TIER_CHARGING : QualityTier.TIER_HIGH;
+
+        if (powerSaveMode)
+        {
+            tier = Math.max(tier, QualityTier.TIER_LOW);
+        }
+
+        if (thermalStatus >= PowerManager.THERMAL_STATUS_CRITICAL)
+        {
+            tier = Math.max(tier, QualityTier.TIER_MINIMAL);
+        }
+        else if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE)
+        {
+            tier = Math.max(tier, QualityTier.TIER_LOW);
+        }
+        else if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE)
+        {
+            tier = Math.max(tier, QualityTier.TIER_BALANCED);
+        }
+
+        return tier;
+    }
+
+    private void evaluate()
+    {
+        if (!started)
+        {
+            return;
+        }
+
+        int desired = desiredTier();
+        long now = SystemClock.uptimeMillis();
+
+        handler.removeCallbacks(this);
+
+        if (desired > currentTier)
+        {
+            // Getting worse, drop straight to the needed tier
+            calmSince = 0L;
+            setTier(desired);
+        }
+        else if (desired < currentTier)
+        {
+            if (calmSince == 0L)
+            {
+                calmSince = now;
+            }
+
+            if (now - calmSince >= UPGRADE_DELAY_MILLIS)
+            {
+                // Climb one tier at a time so a brief cool down can't bounce us back up fully
+                calmSince = desired < currentTier - 1 ? now : 0L;
+                setTier(currentTier - 1);
+            }
+
+            if (calmSince != 0L)
+            {
+                handler.postDelayed(this, UPGRADE_DELAY_MILLIS - (now - calmSince));
+            }
+        }
+        else
+        {
+            calmSince = 0L;
+        }
+    }
+
+    private void setTier(int tier)
+    {
+        currentTier = tier;
+        listener.onQualityTierChanged(QualityTier.TIERS[currentTier]);
+    }
+}
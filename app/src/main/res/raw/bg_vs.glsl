@@ -5,9 +5,14 @@ attribute vec3 aColor;
 
 uniform float uXOffset;
 
+// Positions and colors arrive normalized, these restore their original ranges
+uniform vec2 uPositionScale;
+uniform float uColorScale;
+
 varying vec3 vColor;
 
 void main() {
-    gl_Position = vec4(aPosition.x + uXOffset / 3.5, aPosition.y, 0.0, 1.0);
-    vColor = aColor;
+    vec2 position = aPosition * uPositionScale;
+    gl_Position = vec4(position.x + uXOffset / 3.5, position.y, 0.0, 1.0);
+    vColor = aColor * uColorScale;
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+attribute vec2 aPosition;
+
+varying vec2 vTexCoord;
+
+// Fullscreen quad, the texture coordinates follow from the clip space corners
+void main() {
+    vTexCoord = aPosition * 0.5 + 0.5;
+    gl_Position = vec4(aPosition, 0.0, 1.0);
+}
\ No newline at end of file
@@ -3,9 +3,15 @@ precision highp float;
 uniform sampler2D uTexture;
 
 varying float vAlpha;
+varying float vSprite;
+
+// The atlas holds the dot and beam side by side in 128 pixel tiles, the inset keeps the
+// bilinear filter from picking up the neighbouring tile
+const float TILE_INSET = 0.5 / 128.0;
 
 void main()  {
-    vec4 texColor = texture2D(uTexture, gl_PointCoord);
+    vec2 tileCoord = vec2(clamp(gl_PointCoord.x, TILE_INSET, 1.0 - TILE_INSET), gl_PointCoord.y);
+    vec4 texColor = texture2D(uTexture, vec2((tileCoord.x + vSprite) * 0.5, tileCoord.y));
     texColor.a = vAlpha;
 
     gl_FragColor = texColor;
@@ -1,22 +1,93 @@
 precision highp float;
 
 attribute vec3 aPosition;
+attribute float aSprite;
 
 uniform mat4 uMVPMatrix;
 uniform float uScaleSize;
 uniform float uXOffset;
 
+#ifdef GPU_ANIMATION
+attribute float aXVelocity;
+
+uniform float uTime;
+// Dot values in x, beam values in y
+uniform vec2 uYSpeed;
+uniform vec2 uYBound;
+
+vec3 animate(vec3 seed, float xVelocity) {
+    float ySpeed = mix(uYSpeed.x, uYSpeed.y, aSprite);
+    float yBound = mix(uYBound.x, uYBound.y, aSprite);
+
+    float yRange = yBound * 2.0;
+    float yTravel = seed.y + yBound + ySpeed * seed.z * uTime;
+    float cycle = floor(yTravel / yRange);
+    float y = yTravel - cycle * yRange - yBound;
+
+    float x = seed.x + xVelocity * uTime;
+
+    // Every wrap restarts the particle at a new x, the same as the random reset on the CPU. The sequence only
+    // scales by small constants, so ParticleManager.advanceSeeds lands on the same x when the time is re-based
+    if (cycle > 0.0) {
+        float ticksSinceWrap = (y + yBound) / (ySpeed * seed.z);
+        x = fract(seed.x * 0.7548777 + cycle * 0.5698403) * 2.5 - 1.25;
+        x += xVelocity * ticksSinceWrap;
+    }
+
+    // Particles past x / z > 0.5 come back in at x = -1
+    float xSpan = seed.z * 0.5 + 1.0;
+    x -= xSpan * floor(max(x + 1.0, 0.0) / xSpan);
+
+    return vec3(x, y, seed.z);
+}
+#endif
+
+#ifdef QUAD_SPRITES
+uniform vec2 uViewportSize;
+
+// Part of each atlas tile with any visible color, the beam is a narrow streak down the middle
+// and the dot keeps half a texel clear of the neighbouring tile
+const vec2 DOT_FOOTPRINT = vec2(1.0 - 1.0 / 128.0, 1.0);
+const vec2 BEAM_FOOTPRINT = vec2(0.4, 1.0);
+
+varying vec2 vTexCoord;
+#endif
+
 varying float vAlpha;
+varying float vSprite;
 
 void main() {
+#ifdef GPU_ANIMATION
+    vec4 objPos = vec4(animate(aPosition, aXVelocity), 1.0);
+#else
     vec4 objPos = vec4(aPosition, 1.0);
+#endif
     float tmpPointSize = aPosition.z * 7.0;
+    float sprite = aSprite;
+
+#ifdef QUAD_SPRITES
+    // Each particle comes as four vertices with the corner packed into the sprite as sprite + 2 * corner
+    float cornerIndex = floor(aSprite * 0.5);
+    sprite = aSprite - cornerIndex * 2.0;
+    vec2 corner = vec2(mod(cornerIndex, 2.0), floor(cornerIndex * 0.5)) * 2.0 - 1.0;
+#endif
 
     vAlpha = 0.5 - tmpPointSize / 1000.0;
+    vSprite = sprite;
 
     objPos.z = 0.0;
     objPos.x = objPos.x - uXOffset * tmpPointSize / 100.0;
 
     gl_Position = uMVPMatrix * objPos;
+
+#ifdef QUAD_SPRITES
+    // Spans the same pixels the point would, trimmed to the visible footprint
+    vec2 footprint = mix(DOT_FOOTPRINT, BEAM_FOOTPRINT, sprite);
+    gl_Position.xy += corner * footprint * tmpPointSize * uScaleSize / uViewportSize * gl_Position.w;
+
+    vec2 tileCoord = 0.5 + vec2(corner.x, -corner.y) * footprint * 0.5;
+    vTexCoord = vec2((tileCoord.x + sprite) * 0.5, tileCoord.y);
+#else
     gl_PointSize = tmpPointSize * uScaleSize;
+#endif
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+precision mediump float;
+
+uniform sampler2D uTexture;
+
+varying float vAlpha;
+varying vec2 vTexCoord;
+
+// Blending adds color times alpha, anything below half a step of an 8 bit target changes nothing
+const float MIN_CONTRIBUTION = 0.5 / 255.0;
+
+void main() {
+    vec4 texColor = texture2D(uTexture, vTexCoord);
+
+    if (max(texColor.r, max(texColor.g, texColor.b)) * vAlpha < MIN_CONTRIBUTION) {
+        discard;
+    }
+
+    gl_FragColor = vec4(texColor.rgb, vAlpha);
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.android.phasebeam;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// The app's scene compiled on the spot, the benchmarks can't see the assets :app builds
+final class BenchmarkScene
+{
+    private BenchmarkScene() {}
+
+    // core/build.gradle passes the scene source as -Dphasebeam.scene
+    static PackedScene load() throws IOException
+    {
+        String source = System.getProperty("phasebeam.scene");
+
+        return PackedScene.read(ByteBuffer.wrap(SceneCompiler.compile(new FileReader(source), source)));
+    }
+}
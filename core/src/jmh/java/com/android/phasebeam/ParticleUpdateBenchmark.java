@@ -0,0 +1,62 @@
+package com.android.phasebeam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParticleUpdateBenchmark
+{
+    @Param({"26", "1000", "2048", "4160", "10000", "50000", "100000"})
+    public int particleCount;
+
+    private PackedScene scene;
+    private ParticleManager particleManager;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        scene = BenchmarkScene.load();
+        particleManager = new ParticleManager(scene, particleCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        particleManager.release();
+    }
+
+    // One fixed simulation step, a 60fps frame worth
+    @Benchmark
+    public float[] update()
+    {
+        particleManager.updateParticles(1);
+        return particleManager.getParticleData();
+    }
+
+    // The per-frame blend between the last two steps
+    @Benchmark
+    public float[] interpolate()
+    {
+        particleManager.interpolate(0.5f);
+        return particleManager.getRenderData();
+    }
+
+    @Benchmark
+    public ParticleManager initialize()
+    {
+        return new ParticleManager(scene, particleCount);
+    }
+}
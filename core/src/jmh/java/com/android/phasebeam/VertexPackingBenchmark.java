@@ -0,0 +1,67 @@
+package com.android.phasebeam;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Heap to native copies done before every glBufferData / glBufferSubData
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VertexPackingBenchmark
+{
+    @Param({"26", "1000", "10000", "50000", "100000"})
+    public int particleCount;
+
+    private ParticleManager particleManager;
+    private FloatBuffer persistentBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        particleManager = new ParticleManager(BenchmarkScene.load(), particleCount);
+        persistentBuffer = allocateFloatBuffer(particleManager.getParticleData().length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        particleManager.release();
+    }
+
+    // What StreamingVertexBuffer.upload does every frame
+    @Benchmark
+    public FloatBuffer packParticlesPersistent()
+    {
+        persistentBuffer.position(0);
+        persistentBuffer.put(particleManager.getParticleData(), 0, particleManager.getActiveFloatCount()).position(0);
+        return persistentBuffer;
+    }
+
+    // The old per-frame allocateDirect path, kept as a baseline
+    @Benchmark
+    public FloatBuffer packParticlesFreshDirect()
+    {
+        FloatBuffer buffer = allocateFloatBuffer(particleManager.getActiveFloatCount());
+        buffer.put(particleManager.getParticleData(), 0, particleManager.getActiveFloatCount()).position(0);
+        return buffer;
+    }
+
+    private static FloatBuffer allocateFloatBuffer(int floatCount)
+    {
+        return ByteBuffer.allocateDirect(floatCount * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+}
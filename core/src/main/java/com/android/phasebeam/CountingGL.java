@@ -0,0 +1,499 @@
+package com.android.phasebeam;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+// Forwards to another GLApi and counts what each frame costs, nothing beyond field increments per call
+public class CountingGL implements GLApi
+{
+    private final GLApi gl;
+    private final GLCounters frame = new GLCounters();
+    private final GLCounters lastFrame = new GLCounters();
+
+    public CountingGL(GLApi gl)
+    {
+        this.gl = gl;
+    }
+
+    // Closes the running frame, its counts stay readable through getLastFrame until the next call
+    public void beginFrame()
+    {
+        lastFrame.set(frame);
+        frame.reset();
+    }
+
+    public GLCounters getLastFrame()
+    {
+        return lastFrame;
+    }
+
+    // What the frame in progress has issued so far
+    public GLCounters getFrame()
+    {
+        return frame;
+    }
+
+    static int byteSize(Buffer buffer)
+    {
+        if (buffer == null)
+        {
+            return 0;
+        }
+        else if (buffer instanceof ByteBuffer)
+        {
+            return buffer.remaining();
+        }
+        else if (buffer instanceof ShortBuffer)
+        {
+            return buffer.remaining() * 2;
+        }
+        else if (buffer instanceof FloatBuffer || buffer instanceof IntBuffer)
+        {
+            return buffer.remaining() * 4;
+        }
+
+        return buffer.remaining();
+    }
+
+    //region State
+        @Override
+        public void glEnable(int cap)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glEnable(cap);
+        }
+
+        @Override
+        public void glDisable(int cap)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glDisable(cap);
+        }
+
+        @Override
+        public void glBlendFunc(int sfactor, int dfactor)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glBlendFunc(sfactor, dfactor);
+        }
+
+        @Override
+        public void glClearColor(float red, float green, float blue, float alpha)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glClearColor(red, green, blue, alpha);
+        }
+
+        @Override
+        public void glClear(int mask)
+        {
+            frame.calls++;
+            gl.glClear(mask);
+        }
+
+        @Override
+        public void glViewport(int x, int y, int width, int height)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glViewport(x, y, width, height);
+        }
+    //endregion
+
+    //region Programs and shaders
+        @Override
+        public int glCreateShader(int type)
+        {
+            frame.calls++;
+            return gl.glCreateShader(type);
+        }
+
+        @Override
+        public void glShaderSource(int shader, String source)
+        {
+            frame.calls++;
+            gl.glShaderSource(shader, source);
+        }
+
+        @Override
+        public void glCompileShader(int shader)
+        {
+            frame.calls++;
+            gl.glCompileShader(shader);
+        }
+
+        @Override
+        public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+        {
+            frame.calls++;
+            frame.queries++;
+            gl.glGetShaderiv(shader, pname, params, offset);
+        }
+
+        @Override
+        public String glGetShaderInfoLog(int shader)
+        {
+            frame.calls++;
+            frame.queries++;
+            return gl.glGetShaderInfoLog(shader);
+        }
+
+        @Override
+        public void glDeleteShader(int shader)
+        {
+            frame.calls++;
+            gl.glDeleteShader(shader);
+        }
+
+        @Override
+        public int glCreateProgram()
+        {
+            frame.calls++;
+            return gl.glCreateProgram();
+        }
+
+        @Override
+        public void glAttachShader(int program, int shader)
+        {
+            frame.calls++;
+            gl.glAttachShader(program, shader);
+        }
+
+        @Override
+        public void glLinkProgram(int program)
+        {
+            frame.calls++;
+            gl.glLinkProgram(program);
+        }
+
+        @Override
+        public void glGetProgramiv(int program, int pname, int[] params, int offset)
+        {
+            frame.calls++;
+            frame.queries++;
+            gl.glGetProgramiv(program, pname, params, offset);
+        }
+
+        @Override
+        public String glGetProgramInfoLog(int program)
+        {
+            frame.calls++;
+            frame.queries++;
+            return gl.glGetProgramInfoLog(program);
+        }
+
+        @Override
+        public void glDeleteProgram(int program)
+        {
+            frame.calls++;
+            gl.glDeleteProgram(program);
+        }
+
+        @Override
+        public void glUseProgram(int program)
+        {
+            frame.calls++;
+            frame.programSwitches++;
+            gl.glUseProgram(program);
+        }
+
+        @Override
+        public int glGetAttribLocation(int program, String name)
+        {
+            frame.calls++;
+            frame.queries++;
+            return gl.glGetAttribLocation(program, name);
+        }
+
+        @Override
+        public int glGetUniformLocation(int program, String name)
+        {
+            frame.calls++;
+            frame.queries++;
+            return gl.glGetUniformLocation(program, name);
+        }
+    //endregion
+
+    //region Uniforms
+        @Override
+        public void glUniform1f(int location, float x)
+        {
+            frame.calls++;
+            frame.uniformWrites++;
+            gl.glUniform1f(location, x);
+        }
+
+        @Override
+        public void glUniform2f(int location, float x, float y)
+        {
+            frame.calls++;
+            frame.uniformWrites++;
+            gl.glUniform2f(location, x, y);
+        }
+
+        @Override
+        public void glUniform1i(int location, int x)
+        {
+            frame.calls++;
+            frame.uniformWrites++;
+            gl.glUniform1i(location, x);
+        }
+
+        @Override
+        public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+        {
+            frame.calls++;
+            frame.uniformWrites++;
+            gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+        }
+    //endregion
+
+    //region Buffers and vertex arrays
+        @Override
+        public void glGenBuffers(int n, int[] buffers, int offset)
+        {
+            frame.calls++;
+            gl.glGenBuffers(n, buffers, offset);
+        }
+
+        @Override
+        public void glDeleteBuffers(int n, int[] buffers, int offset)
+        {
+            frame.calls++;
+            gl.glDeleteBuffers(n, buffers, offset);
+        }
+
+        @Override
+        public void glBindBuffer(int target, int buffer)
+        {
+            frame.calls++;
+            frame.bufferBinds++;
+            gl.glBindBuffer(target, buffer);
+        }
+
+        @Override
+        public void glBufferData(int target, int size, Buffer data, int usage)
+        {
+            frame.calls++;
+
+            if (data != null)
+            {
+                frame.bytesUploaded += size;
+            }
+
+            gl.glBufferData(target, size, data, usage);
+        }
+
+        @Override
+        public void glBufferSubData(int target, int offset, int size, Buffer data)
+        {
+            frame.calls++;
+            frame.bytesUploaded += size;
+            gl.glBufferSubData(target, offset, size, data);
+        }
+
+        @Override
+        public void glEnableVertexAttribArray(int index)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glEnableVertexAttribArray(index);
+        }
+
+        @Override
+        public void glDisableVertexAttribArray(int index)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glDisableVertexAttribArray(index);
+        }
+
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+        }
+
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer pointer)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+        }
+    //endregion
+
+    //region Textures and framebuffers
+        @Override
+        public void glGenTextures(int n, int[] textures, int offset)
+        {
+            frame.calls++;
+            gl.glGenTextures(n, textures, offset);
+        }
+
+        @Override
+        public void glDeleteTextures(int n, int[] textures, int offset)
+        {
+            frame.calls++;
+            gl.glDeleteTextures(n, textures, offset);
+        }
+
+        @Override
+        public void glActiveTexture(int texture)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glActiveTexture(texture);
+        }
+
+        @Override
+        public void glBindTexture(int target, int texture)
+        {
+            frame.calls++;
+            frame.textureBinds++;
+            gl.glBindTexture(target, texture);
+        }
+
+        @Override
+        public void glTexParameteri(int target, int pname, int param)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glTexParameteri(target, pname, param);
+        }
+
+        @Override
+        public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+        {
+            frame.calls++;
+            frame.bytesUploaded += byteSize(pixels);
+            gl.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+        }
+
+        @Override
+        public void glGenerateMipmap(int target)
+        {
+            frame.calls++;
+            gl.glGenerateMipmap(target);
+        }
+
+        @Override
+        public void glGenFramebuffers(int n, int[] framebuffers, int offset)
+        {
+            frame.calls++;
+            gl.glGenFramebuffers(n, framebuffers, offset);
+        }
+
+        @Override
+        public void glDeleteFramebuffers(int n, int[] framebuffers, int offset)
+        {
+            frame.calls++;
+            gl.glDeleteFramebuffers(n, framebuffers, offset);
+        }
+
+        @Override
+        public void glBindFramebuffer(int target, int framebuffer)
+        {
+            frame.calls++;
+            frame.stateChanges++;
+            gl.glBindFramebuffer(target, framebuffer);
+        }
+
+        @Override
+        public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level)
+        {
+            frame.calls++;
+            gl.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+        }
+
+        @Override
+        public int glCheckFramebufferStatus(int target)
+        {
+            frame.calls++;
+            frame.queries++;
+            return gl.glCheckFramebufferStatus(target);
+        }
+    //endregion
+
+    //region Drawing
+        @Override
+        public void glDrawArrays(int mode, int first, int count)
+        {
+            frame.calls++;
+            frame.drawCalls++;
+            gl.glDrawArrays(mode, first, count);
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, int offset)
+        {
+            frame.calls++;
+            frame.drawCalls++;
+            gl.glDrawElements(mode, count, type, offset);
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, Buffer indices)
+        {
+            frame.calls++;
+            frame.drawCalls++;
+            gl.glDrawElements(mode, count, type, indices);
+        }
+    //endregion
+
+    //region Queries
+        @Override
+        public String glGetString(int name)
+        {
+            frame.calls++;
+            frame.queries++;
+            return gl.glGetString(name);
+        }
+
+        @Override
+        public void glGetIntegerv(int pname, int[] params, int offset)
+        {
+            frame.calls++;
+            frame.queries++;
+            gl.glGetIntegerv(pname, params, offset);
+        }
+
+        @Override
+        public void glGenQueries(int n, int[] ids, int offset)
+        {
+            frame.calls++;
+            gl.glGenQueries(n, ids, offset);
+        }
+
+        @Override
+        public void glBeginQuery(int target, int id)
+        {
+            frame.calls++;
+            gl.glBeginQuery(target, id);
+        }
+
+        @Override
+        public void glEndQuery(int target)
+        {
+            frame.calls++;
+            gl.glEndQuery(target);
+        }
+
+        @Override
+        public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset)
+        {
+            frame.calls++;
+            frame.queries++;
+            gl.glGetQueryObjectuiv(id, pname, params, offset);
+        }
+    //endregion
+}
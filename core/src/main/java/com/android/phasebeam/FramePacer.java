@@ -0,0 +1,53 @@
+package com.android.phasebeam;
+
+// Decides which vsync ticks should produce a frame for a given target rate
+public class FramePacer
+{
+    public static final int FPS_NATIVE = 0;
+
+    // Vsync timestamps jitter a little, so a frame counts as due slightly early
+    private static final long FRAME_SLACK_NANOS = 2000000L;
+
+    private int targetFps;
+    private long frameIntervalNanos;
+    private long lastFrameTimeNanos;
+    private boolean hasRendered;
+
+    public FramePacer(int targetFps)
+    {
+        setTargetFps(targetFps);
+    }
+
+    public void setTargetFps(int targetFps)
+    {
+        this.targetFps = targetFps;
+        this.frameIntervalNanos = targetFps > 0 ? 1000000000L / targetFps : 0L;
+    }
+
+    public int getTargetFps()
+    {
+        return targetFps;
+    }
+
+    public long getFrameIntervalNanos()
+    {
+        return frameIntervalNanos;
+    }
+
+    public void reset()
+    {
+        hasRendered = false;
+    }
+
+    public boolean shouldRender(long frameTimeNanos)
+    {
+        if (hasRendered && frameTimeNanos - lastFrameTimeNanos < frameIntervalNanos - FRAME_SLACK_NANOS)
+        {
+            return false;
+        }
+
+        hasRendered = true;
+        lastFrameTimeNanos = frameTimeNanos;
+        return true;
+    }
+}
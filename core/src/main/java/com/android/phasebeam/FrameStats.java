@@ -0,0 +1,107 @@
+package com.android.phasebeam;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+// Per-frame timings in nanoseconds, written by the GL thread and printed by dumpsys
+public class FrameStats
+{
+    // Gaps this long mean the wallpaper was hidden or idle rather than janking
+    private static final long IDLE_GAP_NANOS = 1000000000L;
+
+    // A frame counts as dropped once it arrives half an interval late
+    private static final float DROPPED_FRAME_FACTOR = 1.5f;
+
+    // FramePacer.FPS_NATIVE follows vsync, which is assumed to be 60Hz
+    private static final int NATIVE_FPS = 60;
+
+    public final LogHistogram interval = new LogHistogram();
+    public final LogHistogram simulation = new LogHistogram();
+    public final LogHistogram upload = new LogHistogram();
+    public final LogHistogram draw = new LogHistogram();
+    public final LogHistogram gpu = new LogHistogram();
+
+    private volatile int targetFps = FramePacer.FPS_NATIVE;
+    private volatile long droppedFrameThresholdNanos = droppedFrameThreshold(NATIVE_FPS);
+    private long lastFrameStartNanos;
+    private long frameCount;
+    private long droppedFrames;
+
+    // Safe from any thread, only affects how later frames are judged
+    public void setTargetFps(int targetFps)
+    {
+        this.targetFps = targetFps;
+        this.droppedFrameThresholdNanos = droppedFrameThreshold(targetFps > 0 ? targetFps : NATIVE_FPS);
+    }
+
+    // Returns the interval since the previous frame started
+    public long recordFrameStart(long frameStartNanos)
+    {
+        long frameInterval = frameStartNanos - lastFrameStartNanos;
+        lastFrameStartNanos = frameStartNanos;
+        frameCount++;
+
+        if (frameInterval <= 0 || frameInterval >= IDLE_GAP_NANOS)
+        {
+            return frameInterval;
+        }
+
+        interval.record(frameInterval);
+
+        if (frameInterval > droppedFrameThresholdNanos)
+        {
+            droppedFrames++;
+        }
+
+        return frameInterval;
+    }
+
+    public long getDroppedFrames()
+    {
+        return droppedFrames;
+    }
+
+    // Reads race with the GL thread, which at worst skews a single sample
+    public void dump(PrintWriter out, String prefix)
+    {
+        out.print(prefix);
+        out.println("Frame stats (" + frameCount + " frames, " + droppedFrames + " dropped, target "
+                + (targetFps > 0 ? targetFps + "fps" : "native") + "):");
+
+        dumpHistogram(out, prefix, "interval", interval);
+        dumpHistogram(out, prefix, "simulation", simulation);
+        dumpHistogram(out, prefix, "upload", upload);
+        dumpHistogram(out, prefix, "draw", draw);
+        dumpHistogram(out, prefix, "gpu", gpu);
+    }
+
+    private static void dumpHistogram(PrintWriter out, String prefix, String name, LogHistogram histogram)
+    {
+        out.print(prefix);
+
+        if (histogram.getCount() == 0)
+        {
+            out.println(String.format(Locale.US, "  %-10s no samples", name));
+            return;
+        }
+
+        out.println(String.format(Locale.US, "  %-10s mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms (%d samples)",
+                name,
+                toMillis(histogram.getMean()),
+                toMillis(histogram.getPercentile(0.5)),
+                toMillis(histogram.getPercentile(0.9)),
+                toMillis(histogram.getPercentile(0.99)),
+                toMillis(histogram.getMax()),
+                histogram.getCount()));
+    }
+
+    private static long droppedFrameThreshold(int fps)
+    {
+        return (long) (1000000000L / fps * DROPPED_FRAME_FACTOR);
+    }
+
+    private static double toMillis(long nanos)
+    {
+        return nanos / 1000000.0;
+    }
+}
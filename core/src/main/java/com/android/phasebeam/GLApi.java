@@ -0,0 +1,84 @@
+package com.android.phasebeam;
+
+import java.nio.Buffer;
+
+// The GL ES 2 calls the renderer makes, so the driver can be wrapped for counting or swapped for a
+// recorder in JVM tests. Names and arguments match android.opengl.GLES20 one to one
+public interface GLApi
+{
+    //region State
+        void glEnable(int cap);
+        void glDisable(int cap);
+        void glBlendFunc(int sfactor, int dfactor);
+        void glClearColor(float red, float green, float blue, float alpha);
+        void glClear(int mask);
+        void glViewport(int x, int y, int width, int height);
+    //endregion
+
+    //region Programs and shaders
+        int glCreateShader(int type);
+        void glShaderSource(int shader, String source);
+        void glCompileShader(int shader);
+        void glGetShaderiv(int shader, int pname, int[] params, int offset);
+        String glGetShaderInfoLog(int shader);
+        void glDeleteShader(int shader);
+        int glCreateProgram();
+        void glAttachShader(int program, int shader);
+        void glLinkProgram(int program);
+        void glGetProgramiv(int program, int pname, int[] params, int offset);
+        String glGetProgramInfoLog(int program);
+        void glDeleteProgram(int program);
+        void glUseProgram(int program);
+        int glGetAttribLocation(int program, String name);
+        int glGetUniformLocation(int program, String name);
+    //endregion
+
+    //region Uniforms
+        void glUniform1f(int location, float x);
+        void glUniform2f(int location, float x, float y);
+        void glUniform1i(int location, int x);
+        void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+    //endregion
+
+    //region Buffers and vertex arrays
+        void glGenBuffers(int n, int[] buffers, int offset);
+        void glDeleteBuffers(int n, int[] buffers, int offset);
+        void glBindBuffer(int target, int buffer);
+        void glBufferData(int target, int size, Buffer data, int usage);
+        void glBufferSubData(int target, int offset, int size, Buffer data);
+        void glEnableVertexAttribArray(int index);
+        void glDisableVertexAttribArray(int index);
+        void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+        void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer pointer);
+    //endregion
+
+    //region Textures and framebuffers
+        void glGenTextures(int n, int[] textures, int offset);
+        void glDeleteTextures(int n, int[] textures, int offset);
+        void glActiveTexture(int texture);
+        void glBindTexture(int target, int texture);
+        void glTexParameteri(int target, int pname, int param);
+        void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels);
+        void glGenerateMipmap(int target);
+        void glGenFramebuffers(int n, int[] framebuffers, int offset);
+        void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+        void glBindFramebuffer(int target, int framebuffer);
+        void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level);
+        int glCheckFramebufferStatus(int target);
+    //endregion
+
+    //region Drawing
+        void glDrawArrays(int mode, int first, int count);
+        void glDrawElements(int mode, int count, int type, int offset);
+        void glDrawElements(int mode, int count, int type, Buffer indices);
+    //endregion
+
+    //region Queries, the query objects are GLES30 and only there on ES 3 contexts
+        String glGetString(int name);
+        void glGetIntegerv(int pname, int[] params, int offset);
+        void glGenQueries(int n, int[] ids, int offset);
+        void glBeginQuery(int target, int id);
+        void glEndQuery(int target);
+        void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+    //endregion
+}
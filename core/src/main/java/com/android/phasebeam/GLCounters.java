@@ -0,0 +1,53 @@
+package com.android.phasebeam;
+
+import java.io.PrintWriter;
+
+// What a frame cost in GL calls, kept as plain fields so counting is a single increment
+public class GLCounters
+{
+    public int calls;
+    public int drawCalls;
+    public int programSwitches;
+    public int textureBinds;
+    public int bufferBinds;
+    public int uniformWrites;
+    public int stateChanges;
+
+    // Anything that reads back from the driver, which can stall the pipeline
+    public int queries;
+
+    public long bytesUploaded;
+
+    public void reset()
+    {
+        calls = 0;
+        drawCalls = 0;
+        programSwitches = 0;
+        textureBinds = 0;
+        bufferBinds = 0;
+        uniformWrites = 0;
+        stateChanges = 0;
+        queries = 0;
+        bytesUploaded = 0;
+    }
+
+    public void set(GLCounters other)
+    {
+        calls = other.calls;
+        drawCalls = other.drawCalls;
+        programSwitches = other.programSwitches;
+        textureBinds = other.textureBinds;
+        bufferBinds = other.bufferBinds;
+        uniformWrites = other.uniformWrites;
+        stateChanges = other.stateChanges;
+        queries = other.queries;
+        bytesUploaded = other.bytesUploaded;
+    }
+
+    public void dump(PrintWriter out, String prefix)
+    {
+        out.println(prefix + "calls=" + calls + " draws=" + drawCalls + " programs=" + programSwitches
+                + " textures=" + textureBinds + " buffers=" + bufferBinds + " uniforms=" + uniformWrites
+                + " state=" + stateChanges + " queries=" + queries + " uploaded=" + bytesUploaded + "B");
+    }
+}
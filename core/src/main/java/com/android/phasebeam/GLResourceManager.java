@@ -0,0 +1,246 @@
+package com.android.phasebeam;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Every GL object and CPU-side buffer one renderer owns, so memory pressure can give them back and dumpsys
+// can show what is resident. Objects are created and deleted on the GL thread, the footprint is read from any
+public class GLResourceManager
+{
+    public static final int BUFFER = 0;
+    public static final int TEXTURE = 1;
+    public static final int PROGRAM = 2;
+    public static final int FRAMEBUFFER = 3;
+
+    private static final String[] KIND_NAMES = {"buffers", "textures", "programs", "framebuffers"};
+
+    private static class GLObject
+    {
+        final int kind;
+        final int name;
+        final boolean shared;
+        long bytes;
+
+        GLObject(int kind, int name, boolean shared, long bytes)
+        {
+            this.kind = kind;
+            this.name = name;
+            this.shared = shared;
+            this.bytes = bytes;
+        }
+    }
+
+    //region Tracked resources, guarded by this
+        private final GLApi gl;
+        private final int[] ids = new int[1];
+        private final ArrayList<GLObject> objects = new ArrayList<GLObject>();
+        private final LinkedHashMap<String, Long> cpuBuffers = new LinkedHashMap<String, Long>();
+    //endregion
+
+    // Deletes go through the renderer's GL stack, so the state cache forgets what it had bound
+    public GLResourceManager(GLApi gl)
+    {
+        this.gl = gl;
+    }
+
+    //region GL objects
+        // Tracking a name again only updates its size, so reallocations just call this with the new one
+        public synchronized void track(int kind, int name, long bytes)
+        {
+            track(kind, name, bytes, false);
+        }
+
+        // Objects of the EGL share group count towards the footprint but are never deleted from here,
+        // other contexts of the group still draw with them
+        public synchronized void trackShared(int kind, int name, long bytes)
+        {
+            track(kind, name, bytes, true);
+        }
+
+        // Deletes an owned object right away, shared and unknown ones are only forgotten
+        public synchronized void delete(int kind, int name)
+        {
+            GLObject object = find(kind, name);
+
+            if (object != null)
+            {
+                objects.remove(object);
+
+                if (!object.shared)
+                {
+                    deleteObject(kind, name);
+                }
+            }
+        }
+
+        // Needs the context current, returns the GPU bytes given back
+        public synchronized long releaseAll()
+        {
+            long released = 0;
+
+            for (GLObject object : objects)
+            {
+                if (!object.shared)
+                {
+                    deleteObject(object.kind, object.name);
+                    released += object.bytes;
+                }
+            }
+
+            objects.clear();
+
+            return released;
+        }
+
+        // The names died with the context they were created in, or were never valid in the current one
+        public synchronized void forgetAll()
+        {
+            objects.clear();
+        }
+
+        private void track(int kind, int name, long bytes, boolean shared)
+        {
+            if (name == 0)
+            {
+                return;
+            }
+
+            GLObject object = find(kind, name);
+
+            if (object != null)
+            {
+                object.bytes = bytes;
+            }
+            else
+            {
+                objects.add(new GLObject(kind, name, shared, bytes));
+            }
+        }
+
+        private GLObject find(int kind, int name)
+        {
+            for (GLObject object : objects)
+            {
+                if (object.kind == kind && object.name == name)
+                {
+                    return object;
+                }
+            }
+
+            return null;
+        }
+
+        private void deleteObject(int kind, int name)
+        {
+            ids[0] = name;
+
+            switch (kind)
+            {
+                case BUFFER:
+                    gl.glDeleteBuffers(1, ids, 0);
+                    break;
+                case TEXTURE:
+                    gl.glDeleteTextures(1, ids, 0);
+                    break;
+                case PROGRAM:
+                    gl.glDeleteProgram(name);
+                    break;
+                case FRAMEBUFFER:
+                    gl.glDeleteFramebuffers(1, ids, 0);
+                    break;
+            }
+        }
+    //endregion
+
+    //region CPU buffers
+        // Heap arrays and direct buffers by what they hold, a size of 0 drops the entry
+        public synchronized void trackCpu(String name, long bytes)
+        {
+            if (bytes > 0)
+            {
+                cpuBuffers.put(name, bytes);
+            }
+            else
+            {
+                cpuBuffers.remove(name);
+            }
+        }
+    //endregion
+
+    //region Footprint
+        public synchronized long getGpuBytes()
+        {
+            return sumGpuBytes(false);
+        }
+
+        public synchronized long getSharedGpuBytes()
+        {
+            return sumGpuBytes(true);
+        }
+
+        public synchronized long getCpuBytes()
+        {
+            long bytes = 0;
+
+            for (long size : cpuBuffers.values())
+            {
+                bytes += size;
+            }
+
+            return bytes;
+        }
+
+        public synchronized void dump(PrintWriter out, String prefix)
+        {
+            StringBuilder counts = new StringBuilder();
+            int[] owned = new int[KIND_NAMES.length];
+            int sharedCount = 0;
+
+            for (GLObject object : objects)
+            {
+                if (object.shared)
+                {
+                    sharedCount++;
+                }
+                else
+                {
+                    owned[object.kind]++;
+                }
+            }
+
+            for (int kind = 0; kind < KIND_NAMES.length; kind++)
+            {
+                counts.append(' ').append(KIND_NAMES[kind]).append('=').append(owned[kind]);
+            }
+
+            out.println(prefix + "gpu=" + sumGpuBytes(false) + "B" + counts + " shared=" + sumGpuBytes(true)
+                    + "B in " + sharedCount);
+
+            StringBuilder cpu = new StringBuilder();
+
+            for (Map.Entry<String, Long> buffer : cpuBuffers.entrySet())
+            {
+                cpu.append(' ').append(buffer.getKey()).append('=').append(buffer.getValue()).append('B');
+            }
+
+            out.println(prefix + "cpu=" + getCpuBytes() + "B" + cpu);
+        }
+
+        private long sumGpuBytes(boolean shared)
+        {
+            long bytes = 0;
+
+            for (GLObject object : objects)
+            {
+                if (object.shared == shared)
+                {
+                    bytes += object.bytes;
+                }
+            }
+
+            return bytes;
+        }
+    //endregion
+}
@@ -0,0 +1,129 @@
+package com.android.phasebeam;
+
+// Column-major 4x4 matrix helpers matching android.opengl.Matrix, so the projection can be built off-device
+public final class MatrixUtils
+{
+    private MatrixUtils() {}
+
+    public static void setIdentityM(float[] m, int offset)
+    {
+        for (int i = 0; i < 16; i++)
+        {
+            m[offset + i] = (i % 5 == 0) ? 1.0f : 0.0f;
+        }
+    }
+
+    public static void frustumM(float[] m, int offset, float left, float right, float bottom, float top, float near, float far)
+    {
+        if (left == right || top == bottom || near == far || near <= 0.0f || far <= 0.0f)
+        {
+            throw new IllegalArgumentException("Invalid frustum");
+        }
+
+        final float rWidth = 1.0f / (right - left);
+        final float rHeight = 1.0f / (top - bottom);
+        final float rDepth = 1.0f / (near - far);
+
+        for (int i = 0; i < 16; i++)
+        {
+            m[offset + i] = 0.0f;
+        }
+
+        m[offset] = 2.0f * (near * rWidth);
+        m[offset + 5] = 2.0f * (near * rHeight);
+        m[offset + 8] = (right + left) * rWidth;
+        m[offset + 9] = (top + bottom) * rHeight;
+        m[offset + 10] = (far + near) * rDepth;
+        m[offset + 11] = -1.0f;
+        m[offset + 14] = 2.0f * (far * near * rDepth);
+    }
+
+    public static void setRotateM(float[] rm, int offset, float angle, float x, float y, float z)
+    {
+        rm[offset + 3] = 0.0f;
+        rm[offset + 7] = 0.0f;
+        rm[offset + 11] = 0.0f;
+        rm[offset + 12] = 0.0f;
+        rm[offset + 13] = 0.0f;
+        rm[offset + 14] = 0.0f;
+        rm[offset + 15] = 1.0f;
+
+        angle *= (float) (Math.PI / 180.0);
+        float s = (float) Math.sin(angle);
+        float c = (float) Math.cos(angle);
+
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+
+        if (length != 1.0f)
+        {
+            float recipLength = 1.0f / length;
+            x *= recipLength;
+            y *= recipLength;
+            z *= recipLength;
+        }
+
+        float nc = 1.0f - c;
+        float xy = x * y;
+        float yz = y * z;
+        float zx = z * x;
+        float xs = x * s;
+        float ys = y * s;
+        float zs = z * s;
+
+        rm[offset] = x * x * nc + c;
+        rm[offset + 4] = xy * nc - zs;
+        rm[offset + 8] = zx * nc + ys;
+        rm[offset + 1] = xy * nc + zs;
+        rm[offset + 5] = y * y * nc + c;
+        rm[offset + 9] = yz * nc - xs;
+        rm[offset + 2] = zx * nc - ys;
+        rm[offset + 6] = yz * nc + xs;
+        rm[offset + 10] = z * z * nc + c;
+    }
+
+    public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset)
+    {
+        for (int column = 0; column < 4; column++)
+        {
+            for (int row = 0; row < 4; row++)
+            {
+                float sum = 0.0f;
+
+                for (int k = 0; k < 4; k++)
+                {
+                    sum += lhs[lhsOffset + k * 4 + row] * rhs[rhsOffset + column * 4 + k];
+                }
+
+                result[resultOffset + column * 4 + row] = sum;
+            }
+        }
+    }
+
+    public static void rotateM(float[] m, int offset, float angle, float x, float y, float z)
+    {
+        float[] rotation = new float[16];
+        float[] product = new float[16];
+
+        setRotateM(rotation, 0, angle, x, y, z);
+        multiplyMM(product, 0, m, offset, rotation, 0);
+        System.arraycopy(product, 0, m, offset, 16);
+    }
+
+    public static void scaleM(float[] m, int offset, float x, float y, float z)
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            m[offset + i] *= x;
+            m[offset + 4 + i] *= y;
+            m[offset + 8 + i] *= z;
+        }
+    }
+
+    public static void translateM(float[] m, int offset, float x, float y, float z)
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            m[offset + 12 + i] += m[offset + i] * x + m[offset + 4 + i] * y + m[offset + 8 + i] * z;
+        }
+    }
+}
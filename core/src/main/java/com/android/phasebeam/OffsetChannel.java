@@ -0,0 +1,74 @@
+package com.android.phasebeam;
+
+// Hands the launcher scroll offset from the UI thread to the GL thread without locks or allocation
+// One writer and one reader, bursts of events collapse into the latest value and the time it arrived
+public class OffsetChannel
+{
+    //region Published sample, sequence is odd while a write is in progress
+        private volatile int sequence;
+        private volatile float offset;
+        private volatile long timeNanos;
+    //endregion
+
+    //region Reader side, only touched by the reading thread
+        private int readSequence;
+        private float latestOffset;
+        private long latestTimeNanos;
+    //endregion
+
+    public OffsetChannel(float initialOffset)
+    {
+        offset = initialOffset;
+        latestOffset = initialOffset;
+    }
+
+    // Writer thread only, overwrites whatever the reader hasn't picked up yet
+    public void publish(float offset, long timeNanos)
+    {
+        int next = sequence + 1;
+        sequence = next;
+        this.offset = offset;
+        this.timeNanos = timeNanos;
+        sequence = next + 1;
+    }
+
+    // Reader thread only, returns true when a newer sample than the last one read is available
+    public boolean poll()
+    {
+        while (true)
+        {
+            int before = sequence;
+
+            if (before == readSequence)
+            {
+                return false;
+            }
+
+            float sampleOffset = offset;
+            long sampleTime = timeNanos;
+
+            // A write raced the reads, the writer is done within a few instructions so just try again
+            if ((before & 1) != 0 || sequence != before)
+            {
+                Thread.yield();
+                continue;
+            }
+
+            readSequence = before;
+            latestOffset = sampleOffset;
+            latestTimeNanos = sampleTime;
+
+            return true;
+        }
+    }
+
+    public float getLatestOffset()
+    {
+        return latestOffset;
+    }
+
+    public long getLatestTimeNanos()
+    {
+        return latestTimeNanos;
+    }
+}
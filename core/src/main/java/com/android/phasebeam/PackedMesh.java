@@ -0,0 +1,82 @@
+package com.android.phasebeam;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Indexed mesh asset written by the build-time MeshCompiler, little endian like every Android ABI
+public class PackedMesh
+{
+    public static final int MAGIC = 0x534D4250; // "PBMS"
+    public static final int VERSION = 1;
+
+    // magic, version, vertex count, index count, position scale x and y, color scale
+    public static final int HEADER_SIZE = 7 * 4;
+
+    // Normalized short x and y, then normalized unsigned byte r, g and b padded to 4 bytes
+    public static final int VERTEX_STRIDE = 8;
+    public static final int POSITION_OFFSET = 0;
+    public static final int COLOR_OFFSET = 4;
+
+    public final int vertexCount;
+    public final int indexCount;
+
+    // Multiplied back in the vertex shader, the source data doesn't fit the normalized ranges
+    public final float positionScaleX;
+    public final float positionScaleY;
+    public final float colorScale;
+
+    // Views into the asset, ready for glBufferData or client-side arrays
+    public final ByteBuffer vertices;
+    public final ByteBuffer indices;
+
+    private PackedMesh(ByteBuffer data)
+    {
+        vertexCount = data.getInt(8);
+        indexCount = data.getInt(12);
+        positionScaleX = data.getFloat(16);
+        positionScaleY = data.getFloat(20);
+        colorScale = data.getFloat(24);
+
+        int vertexBytes = vertexCount * VERTEX_STRIDE;
+        vertices = slice(data, HEADER_SIZE, vertexBytes);
+        indices = slice(data, HEADER_SIZE + vertexBytes, indexCount * 2);
+    }
+
+    public int getVertexDataSize()
+    {
+        return vertexCount * VERTEX_STRIDE;
+    }
+
+    public int getIndexDataSize()
+    {
+        return indexCount * 2;
+    }
+
+    public static PackedMesh read(ByteBuffer data)
+    {
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION)
+        {
+            throw new IllegalArgumentException("Not a version " + VERSION + " packed mesh");
+        }
+
+        long expectedSize = HEADER_SIZE + (long) data.getInt(8) * VERTEX_STRIDE + (long) data.getInt(12) * 2;
+
+        if (data.capacity() < expectedSize)
+        {
+            throw new IllegalArgumentException("Truncated packed mesh");
+        }
+
+        return new PackedMesh(data);
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int offset, int length)
+    {
+        ByteBuffer view = data.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
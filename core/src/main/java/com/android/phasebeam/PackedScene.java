@@ -0,0 +1,163 @@
+package com.android.phasebeam;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Scene asset written by the build-time SceneCompiler, read in place from the mapped file as parts are asked for
+public class PackedScene
+{
+    public static final int MAGIC = 0x43534250; // "PBSC"
+    public static final int VERSION = 1;
+
+    // magic, version, pair count, particle and background parallax, dot, beam and mesh offsets, mesh size
+    public static final int HEADER_SIZE = 9 * 4;
+
+    // Spawn x and y ranges, x and y speed, y bound, band period and band count, followed by the bands
+    public static final int EMITTER_SIZE = 9 * 4;
+
+    // First and end position in the period, z range and a fixed x or NaN for a random one
+    public static final int BAND_SIZE = 5 * 4;
+
+    // Dots and beams are always spawned in pairs, so a scene has exactly these two emitters
+    public static final int EMITTER_DOT = 0;
+    public static final int EMITTER_BEAM = 1;
+    public static final int EMITTER_COUNT = 2;
+
+    public final int pairCount;
+    public final float particleParallax;
+    public final float backgroundParallax;
+
+    private final ByteBuffer data;
+    private final Emitter[] emitters = new Emitter[EMITTER_COUNT];
+
+    public static class Emitter
+    {
+        public final float spawnXMin;
+        public final float spawnXMax;
+        public final float spawnYMin;
+        public final float spawnYMax;
+        public final float xSpeed;
+        public final float ySpeed;
+        public final float yBound;
+
+        //region Depth bands
+            private final int bandPeriod;
+            private final int[] bandFrom;
+            private final int[] bandTo;
+            private final float[] bandZMin;
+            private final float[] bandZMax;
+            private final float[] bandX;
+        //endregion
+
+        private Emitter(ByteBuffer data, int offset)
+        {
+            spawnXMin = data.getFloat(offset);
+            spawnXMax = data.getFloat(offset + 4);
+            spawnYMin = data.getFloat(offset + 8);
+            spawnYMax = data.getFloat(offset + 12);
+            xSpeed = data.getFloat(offset + 16);
+            ySpeed = data.getFloat(offset + 20);
+            yBound = data.getFloat(offset + 24);
+            bandPeriod = data.getInt(offset + 28);
+
+            int bandCount = data.getInt(offset + 32);
+            bandFrom = new int[bandCount];
+            bandTo = new int[bandCount];
+            bandZMin = new float[bandCount];
+            bandZMax = new float[bandCount];
+            bandX = new float[bandCount];
+
+            for (int i = 0; i < bandCount; i++)
+            {
+                int bandOffset = offset + EMITTER_SIZE + i * BAND_SIZE;
+
+                bandFrom[i] = data.getInt(bandOffset);
+                bandTo[i] = data.getInt(bandOffset + 4);
+                bandZMin[i] = data.getFloat(bandOffset + 8);
+                bandZMax[i] = data.getFloat(bandOffset + 12);
+                bandX[i] = data.getFloat(bandOffset + 16);
+            }
+        }
+
+        // The compiler checks that every position in the period is covered, the first band containing it wins
+        public int bandAt(int pair)
+        {
+            int position = pair % bandPeriod;
+
+            for (int i = 0; i < bandFrom.length; i++)
+            {
+                if (position >= bandFrom[i] && position < bandTo[i])
+                {
+                    return i;
+                }
+            }
+
+            return bandFrom.length - 1;
+        }
+
+        public float getBandZMin(int band)
+        {
+            return bandZMin[band];
+        }
+
+        public float getBandZMax(int band)
+        {
+            return bandZMax[band];
+        }
+
+        // NaN when the band spawns at a random x like the rest
+        public float getBandX(int band)
+        {
+            return bandX[band];
+        }
+    }
+
+    private PackedScene(ByteBuffer data)
+    {
+        this.data = data;
+
+        pairCount = data.getInt(8);
+        particleParallax = data.getFloat(12);
+        backgroundParallax = data.getFloat(16);
+    }
+
+    // Emitters are immutable once decoded, so every particle manager of the scene can share them
+    public synchronized Emitter getEmitter(int emitter)
+    {
+        if (emitters[emitter] == null)
+        {
+            emitters[emitter] = new Emitter(data, data.getInt(20 + emitter * 4));
+        }
+
+        return emitters[emitter];
+    }
+
+    // Fresh views on every call, renderers on different threads move the buffer positions independently.
+    // They stay valid for as long as the mapping does
+    public PackedMesh getBackgroundMesh()
+    {
+        ByteBuffer view = data.duplicate();
+        int meshOffset = data.getInt(28);
+        view.limit(meshOffset + data.getInt(32));
+        view.position(meshOffset);
+
+        return PackedMesh.read(view.slice());
+    }
+
+    public static PackedScene read(ByteBuffer data)
+    {
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION)
+        {
+            throw new IllegalArgumentException("Not a version " + VERSION + " packed scene");
+        }
+
+        if (data.capacity() < (long) data.getInt(28) + data.getInt(32))
+        {
+            throw new IllegalArgumentException("Truncated packed scene");
+        }
+
+        return new PackedScene(data);
+    }
+}
@@ -0,0 +1,150 @@
+package com.android.phasebeam;
+
+import java.util.Random;
+
+public class ParallelParticleUpdater
+{
+    // A handful of workers is enough, the update is memory bound long before it is compute bound
+    private static final int MAX_WORKERS = 3;
+
+    //region Job state, guarded by lock
+        private final Object lock = new Object();
+        private final ParticleManager particleManager;
+        private final Random callerRandom = new Random();
+        private final int workerCount;
+        private int generation;
+        private int pendingWorkers;
+        private boolean shutdown;
+
+        private int particleCount;
+        private float deltaTimeFactor;
+    //endregion
+
+    public ParallelParticleUpdater(ParticleManager particleManager)
+    {
+        this.particleManager = particleManager;
+        this.workerCount = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+
+        for (int i = 0; i < workerCount; i++)
+        {
+            Thread worker = new Thread(new Worker(i + 1), "PhaseBeamParticles-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    // Splits the particles into one chunk per worker plus one for the calling thread and waits for all of them
+    public void update(int particleCount, float deltaTimeFactor)
+    {
+        synchronized (lock)
+        {
+            if (shutdown)
+            {
+                particleManager.updateRange(0, particleCount, deltaTimeFactor, callerRandom);
+                return;
+            }
+
+            this.particleCount = particleCount;
+            this.deltaTimeFactor = deltaTimeFactor;
+
+            pendingWorkers = workerCount;
+            generation++;
+            lock.notifyAll();
+        }
+
+        particleManager.updateRange(0, chunkEnd(0, particleCount), deltaTimeFactor, callerRandom);
+
+        synchronized (lock)
+        {
+            boolean interrupted = false;
+
+            while (pendingWorkers > 0)
+            {
+                try
+                {
+                    lock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void shutdown()
+    {
+        synchronized (lock)
+        {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    private int chunkEnd(int chunk, int particleCount)
+    {
+        return (int) ((long) particleCount * (chunk + 1) / (workerCount + 1));
+    }
+
+    private class Worker implements Runnable
+    {
+        private final int chunk;
+        private final Random random = new Random();
+
+        Worker(int chunk)
+        {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public void run()
+        {
+            int seenGeneration = 0;
+
+            while (true)
+            {
+                int count;
+                float factor;
+
+                synchronized (lock)
+                {
+                    // A job that was already dispatched still gets finished after a shutdown
+                    while (generation == seenGeneration && !shutdown)
+                    {
+                        try
+                        {
+                            lock.wait();
+                        }
+                        catch (InterruptedException ignored) {}
+                    }
+
+                    if (generation == seenGeneration)
+                    {
+                        return;
+                    }
+
+                    seenGeneration = generation;
+                    count = particleCount;
+                    factor = deltaTimeFactor;
+                }
+
+                particleManager.updateRange(chunkEnd(chunk - 1, count), chunkEnd(chunk, count), factor, random);
+
+                synchronized (lock)
+                {
+                    pendingWorkers--;
+
+                    if (pendingWorkers == 0)
+                    {
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
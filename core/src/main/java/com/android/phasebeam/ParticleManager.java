@@ -0,0 +1,525 @@
+package com.android.phasebeam;
+
+import java.util.Random;
+
+public class ParticleManager
+{
+    //region Motion constants
+        public static final float TICK_MILLIS = 66.0f; // This adjusts it to the designed 15fps or so
+        public static final float TICK_NANOS = TICK_MILLIS * 1000000.0f;
+
+        // The simulation always advances in steps of this length, rendering blends between the last two
+        public static final long STEP_NANOS = 1000000000L / 60;
+        public static final float STEP_TICKS = STEP_NANOS / TICK_NANOS;
+
+        // Moves larger than this between two steps are wraparounds, which must not be blended across
+        private static final float MAX_BLEND_DISTANCE = 0.5f;
+
+        // Sprite index into the particle texture atlas
+        public static final float SPRITE_DOT = 0.0f;
+        public static final float SPRITE_BEAM = 1.0f;
+
+        // Seeds for the GPU animation are x, y, z, sprite and x velocity per tick
+        public static final int SEED_PROPERTY_COUNT = 5;
+    //endregion
+
+    // Pairs, from ParticleUpdateBenchmark: a step costs about 4.3ns per pair and waking the workers about 4us, so
+    // with the caller and three workers sharing the step the pool wins from roughly 1250 pairs. Rounded up for the
+    // slower wakeups on phones
+    public static final int PARALLEL_THRESHOLD = 2048;
+
+    Random random = new Random();
+
+    //region Scene
+        // Spawn ranges, depth bands and speeds come from the scene asset instead of being built in
+        private final PackedScene scene;
+        private final PackedScene.Emitter dots;
+        private final PackedScene.Emitter beams;
+    //endregion
+
+    //region Particle data
+        // Dots and beams share one interleaved x, y, z, sprite array as dot / beam pairs, so the
+        // active particles are always one contiguous range at the start
+        private final int particlePropertyCount = 4;
+        private final int pairStride = particlePropertyCount * 2;
+        private int particleCount;
+        private int initializedCount;
+        private int activeParticleCount;
+        private float[] particleData = new float[0];
+        private float[] previousData = new float[0];
+        private float[] renderData = new float[0];
+        private ParallelParticleUpdater parallelUpdater;
+    //endregion
+
+    // Launcher scroll events arrive at most this far apart while a swipe is still going
+    private static final long MAX_OFFSET_GLIDE_NANOS = 100000000L;
+
+    // dot_vs.glsl shifts each particle by uXOffset * z * 7 / 100
+    private static final float PARALLAX_PER_DEPTH = 0.07f;
+
+    //region Touch input
+        private final TouchQueue touchQueue = new TouchQueue();
+        private final TouchField touchField = new TouchField();
+    //endregion
+
+    //region Dimensional data
+        private final OffsetChannel offsetChannel = new OffsetChannel(0.5f);
+        private float xOffset = 0.5f;
+        private float glideFromXOffset = 0.5f;
+        private float glideToXOffset = 0.5f;
+        private long glideStartNanos;
+        private long glideNanos;
+        public float backgroundXOffset;
+        public float particleXOffset;
+    //endregion
+
+    public ParticleManager(PackedScene scene)
+    {
+        this(scene, scene.pairCount);
+    }
+
+    public ParticleManager(PackedScene scene, int particleCount)
+    {
+        this.scene = scene;
+        this.dots = scene.getEmitter(PackedScene.EMITTER_DOT);
+        this.beams = scene.getEmitter(PackedScene.EMITTER_BEAM);
+
+        particleXOffset = xOffset * scene.particleParallax;
+        backgroundXOffset = xOffset * scene.backgroundParallax;
+
+        setParticleCount(particleCount);
+    }
+
+    public PackedScene.Emitter getDots()
+    {
+        return dots;
+    }
+
+    public PackedScene.Emitter getBeams()
+    {
+        return beams;
+    }
+
+    public int getParticleArrayDataSize()
+    {
+        return particleCount * pairStride * 4;
+    }
+
+    // The newest simulation state, replaced when the particle count grows so fetch it again every frame
+    public float[] getParticleData()
+    {
+        return particleData;
+    }
+
+    // What to draw, filled by interpolate and replaced along with the particle data
+    public float[] getRenderData()
+    {
+        return renderData;
+    }
+
+    public int getParticleCount()
+    {
+        return particleCount;
+    }
+
+    // Existing particles keep their state, new ones are spawned like the original scene
+    public void setParticleCount(int particleCount)
+    {
+        particleCount = Math.max(1, particleCount);
+
+        if (particleCount * pairStride > particleData.length)
+        {
+            particleData = grow(particleData, particleCount * pairStride);
+            previousData = grow(previousData, particleCount * pairStride);
+            renderData = grow(renderData, particleCount * pairStride);
+        }
+
+        if (particleCount > initializedCount)
+        {
+            initializeParticles(initializedCount, particleCount);
+            settle(initializedCount, particleCount);
+            initializedCount = particleCount;
+        }
+
+        this.particleCount = particleCount;
+        this.activeParticleCount = particleCount;
+    }
+
+    private float[] grow(float[] data, int length)
+    {
+        float[] grownData = new float[length];
+        System.arraycopy(data, 0, grownData, 0, initializedCount * pairStride);
+
+        return grownData;
+    }
+
+    // Makes the previous and drawn state match the current one, nothing to blend from
+    private void settle(int from, int to)
+    {
+        int start = from * pairStride;
+        int length = (to - from) * pairStride;
+
+        System.arraycopy(particleData, start, previousData, start, length);
+        System.arraycopy(particleData, start, renderData, start, length);
+    }
+
+    public int getVertexCount()
+    {
+        return particleCount * 2;
+    }
+
+    public int getActiveParticleCount()
+    {
+        return activeParticleCount;
+    }
+
+    public int getActiveVertexCount()
+    {
+        return activeParticleCount * 2;
+    }
+
+    public int getActiveFloatCount()
+    {
+        return activeParticleCount * pairStride;
+    }
+
+    // Particles past the active count keep their state and simply resume when brought back
+    public void setActiveParticleCount(int activeParticleCount)
+    {
+        activeParticleCount = Math.max(0, Math.min(activeParticleCount, particleCount));
+
+        // Returning particles were frozen, blending from their old previous state would smear them
+        if (activeParticleCount > this.activeParticleCount)
+        {
+            settle(this.activeParticleCount, activeParticleCount);
+        }
+
+        this.activeParticleCount = activeParticleCount;
+    }
+
+    public int getParticlePropertyCount()
+    {
+        return particlePropertyCount;
+    }
+
+    // Stops the update workers, the manager falls back to updating on the calling thread
+    public void release()
+    {
+        if (parallelUpdater != null)
+        {
+            parallelUpdater.shutdown();
+            parallelUpdater = null;
+        }
+    }
+
+    // Snapshots the current state as static seeds the vertex shader can animate on its own
+    public void fillSeedData(float[] seeds)
+    {
+        for (int i = 0; i < particleCount * 2; i++)
+        {
+            int index = i * particlePropertyCount;
+            int seedIndex = i * SEED_PROPERTY_COUNT;
+            float xVelocity;
+
+            if (i % 2 == 0)
+            {
+                int nextBeamIndex = (i / 2 < particleCount - 1 ? index + pairStride : 0) + particlePropertyCount;
+                xVelocity = dots.xSpeed * particleData[nextBeamIndex + 2];
+            }
+            else
+            {
+                xVelocity = beams.xSpeed * particleData[index + 2];
+            }
+
+            System.arraycopy(particleData, index, seeds, seedIndex, particlePropertyCount);
+            seeds[seedIndex + 4] = xVelocity;
+        }
+    }
+
+    // Moves seeds ahead by ticks the way animate in dot_vs.glsl does, so the shader's time can start over from them
+    // The math stays in float and in the shader's order for the positions to line up at the switch
+    public void advanceSeeds(float[] seeds, float ticks)
+    {
+        for (int i = 0; i < particleCount * 2; i++)
+        {
+            int seedIndex = i * SEED_PROPERTY_COUNT;
+            PackedScene.Emitter emitter = i % 2 == 0 ? dots : beams;
+
+            float seedX = seeds[seedIndex];
+            float z = seeds[seedIndex + 2];
+            float xVelocity = seeds[seedIndex + 4];
+            float ySpeed = emitter.ySpeed * z;
+
+            float yRange = emitter.yBound * 2.0f;
+            float yTravel = seeds[seedIndex + 1] + emitter.yBound + ySpeed * ticks;
+            float cycle = (float) Math.floor(yTravel / yRange);
+            float y = yTravel - cycle * yRange - emitter.yBound;
+
+            float x = seedX + xVelocity * ticks;
+
+            if (cycle > 0.0f)
+            {
+                float ticksSinceWrap = (y + emitter.yBound) / ySpeed;
+                float wrapX = seedX * 0.7548777f + cycle * 0.5698403f;
+                x = (wrapX - (float) Math.floor(wrapX)) * 2.5f - 1.25f;
+                x += xVelocity * ticksSinceWrap;
+            }
+
+            float xSpan = z * 0.5f + 1.0f;
+            x -= xSpan * (float) Math.floor(Math.max(x + 1.0f, 0.0f) / xSpan);
+
+            seeds[seedIndex] = x;
+            seeds[seedIndex + 1] = y;
+        }
+    }
+
+    // Called on the UI thread for every launcher scroll event, timeNanos is System.nanoTime()
+    public void setXOffset(float xOffset, long timeNanos)
+    {
+        offsetChannel.publish(xOffset, timeNanos);
+    }
+
+    // Called on the UI thread with surface pixels, dropped if the GL thread is too far behind
+    public void queueTouch(int action, int pointerId, float x, float y)
+    {
+        touchQueue.offer(action, pointerId, x, y);
+    }
+
+    // Called on the UI thread when touches stop arriving mid-gesture, the field lets go at the next drain
+    public void clearTouches()
+    {
+        touchQueue.offer(TouchQueue.ACTION_CANCEL_ALL, 0, 0.0f, 0.0f);
+    }
+
+    public void setTouchViewport(int width, int height)
+    {
+        touchField.setViewport(width, height);
+    }
+
+    // Drains this frame's touches and rebuilds the force grid, call before updateParticles
+    public void tickTouches(long frameTimeNanos)
+    {
+        touchField.setFrameTime(frameTimeNanos);
+        touchQueue.drainTo(touchField);
+        touchField.update();
+    }
+
+    // Counts past the scene's band period repeat its depth bands
+    private void initializeParticles(int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            spawn(dots, i, i * pairStride, SPRITE_DOT);
+            spawn(beams, i, i * pairStride + particlePropertyCount, SPRITE_BEAM);
+        }
+    }
+
+    private void spawn(PackedScene.Emitter emitter, int pair, int index, float sprite)
+    {
+        int band = emitter.bandAt(pair);
+
+        float x = boundRandom(emitter.spawnXMin, emitter.spawnXMax);
+        float y = boundRandom(emitter.spawnYMin, emitter.spawnYMax);
+        float z = boundRandom(emitter.getBandZMin(band), emitter.getBandZMax(band));
+
+        if (!Float.isNaN(emitter.getBandX(band)))
+        {
+            x = emitter.getBandX(band);
+        }
+
+        particleData[index] = x;
+        particleData[index + 1] = y;
+        particleData[index + 2] = z;
+        particleData[index + 3] = sprite;
+    }
+
+    // Runs a number of fixed steps in place on the interleaved array so a frame never touches the heap,
+    // keeping the state before the last one for interpolate
+    public void updateParticles(int steps)
+    {
+        for (int step = 0; step < steps; step++)
+        {
+            if (step == steps - 1)
+            {
+                System.arraycopy(particleData, 0, previousData, 0, getActiveFloatCount());
+            }
+
+            if (activeParticleCount >= PARALLEL_THRESHOLD)
+            {
+                if (parallelUpdater == null)
+                {
+                    parallelUpdater = new ParallelParticleUpdater(this);
+                }
+
+                parallelUpdater.update(activeParticleCount, STEP_TICKS);
+            }
+            else
+            {
+                updateRange(0, activeParticleCount, STEP_TICKS, random);
+            }
+        }
+    }
+
+    // Blends x and y of the last two steps into the render data, alpha 0 is the older one
+    public void interpolate(float alpha)
+    {
+        final float[] particleData = this.particleData;
+        final float[] previousData = this.previousData;
+        final float[] renderData = this.renderData;
+        int floatCount = getActiveFloatCount();
+
+        // z and the sprite never change after spawning and were copied by settle
+        for (int index = 0; index < floatCount; index += particlePropertyCount)
+        {
+            float x = particleData[index];
+            float y = particleData[index + 1];
+            float previousX = previousData[index];
+            float previousY = previousData[index + 1];
+
+            if (Math.abs(x - previousX) < MAX_BLEND_DISTANCE && Math.abs(y - previousY) < MAX_BLEND_DISTANCE)
+            {
+                x = previousX + (x - previousX) * alpha;
+                y = previousY + (y - previousY) * alpha;
+            }
+
+            renderData[index] = x;
+            renderData[index + 1] = y;
+        }
+    }
+
+    // Only writes x and y of its own range, z is never written after spawning so reading the next
+    // beam's z stays safe while a neighbouring range is updated on another thread
+    void updateRange(int from, int to, float deltaTimeFactor, Random random)
+    {
+        final float[] particleData = this.particleData;
+        final TouchField touchField = this.touchField.isActive() ? this.touchField : null;
+        final float parallax = particleXOffset * PARALLAX_PER_DEPTH;
+        final PackedScene.Emitter dots = this.dots;
+        final PackedScene.Emitter beams = this.beams;
+
+        for (int i = from; i < to; i++)
+        {
+            int index = i * pairStride;
+            int beamIndex = index + particlePropertyCount;
+
+            float particleX = particleData[index];
+            float particleY = particleData[index + 1];
+            float particleZ = particleData[index + 2];
+
+            float beamX = particleData[beamIndex];
+            float beamY = particleData[beamIndex + 1];
+            float beamZ = particleData[beamIndex + 2];
+
+            if (beamX / beamZ > 0.5f)
+            {
+                beamX = -1.0f;
+            }
+
+            if (particleX / particleZ > 0.5f)
+            {
+                particleX = -1.0f;
+            }
+
+            if (beamY > beams.yBound)
+            {
+                beamY = -beams.yBound;
+                beamX = boundRandom(random, beams.spawnXMin, beams.spawnXMax);
+            }
+            else
+            {
+                beamY += beams.ySpeed * deltaTimeFactor * beamZ;
+            }
+
+            if (particleY > dots.yBound)
+            {
+                particleY = -dots.yBound;
+                particleX = boundRandom(random, dots.spawnXMin, dots.spawnXMax);
+            }
+            else
+            {
+                particleY += dots.ySpeed * deltaTimeFactor * particleZ;
+            }
+
+            beamX += beams.xSpeed * deltaTimeFactor * beamZ;
+
+            // Forces are looked up where the particle is drawn, parallax included
+            if (touchField != null)
+            {
+                int cell = touchField.cellAt(beamX - parallax * beamZ, beamY);
+
+                if (cell >= 0)
+                {
+                    beamX += touchField.getForceX(cell) * deltaTimeFactor;
+                    beamY += touchField.getForceY(cell) * deltaTimeFactor;
+                }
+            }
+
+            particleData[beamIndex] = beamX;
+            particleData[beamIndex + 1] = beamY;
+
+            // the next beams z value because the renderscript can use pointer magic but we can't
+            float nextBeamZ = i < particleCount - 1 ? particleData[beamIndex + pairStride + 2] : particleData[particlePropertyCount + 2];
+
+            particleX += dots.xSpeed * deltaTimeFactor * nextBeamZ;
+
+            if (touchField != null)
+            {
+                int cell = touchField.cellAt(particleX - parallax * particleZ, particleY);
+
+                if (cell >= 0)
+                {
+                    particleX += touchField.getForceX(cell) * deltaTimeFactor;
+                    particleY += touchField.getForceY(cell) * deltaTimeFactor;
+                }
+            }
+
+            particleData[index] = particleX;
+            particleData[index + 1] = particleY;
+        }
+    }
+
+    // Glides towards the latest scroll offset over the gap between the last two events, so sparse
+    // events still move smoothly and the offset arrives about when the next event is due
+    public void tickXOffset(long frameTimeNanos)
+    {
+        long previousSampleNanos = offsetChannel.getLatestTimeNanos();
+
+        if (offsetChannel.poll())
+        {
+            long sampleNanos = offsetChannel.getLatestTimeNanos();
+
+            glideFromXOffset = xOffset;
+            glideToXOffset = offsetChannel.getLatestOffset();
+            glideStartNanos = sampleNanos;
+            glideNanos = Math.max(0, Math.min(MAX_OFFSET_GLIDE_NANOS, sampleNanos - previousSampleNanos));
+        }
+
+        if (xOffset != glideToXOffset)
+        {
+            long elapsedNanos = frameTimeNanos - glideStartNanos;
+
+            if (elapsedNanos >= glideNanos)
+            {
+                xOffset = glideToXOffset;
+            }
+            else
+            {
+                float progress = Math.max(0.0f, (float) elapsedNanos / glideNanos);
+                xOffset = glideFromXOffset + (glideToXOffset - glideFromXOffset) * progress;
+            }
+        }
+
+        particleXOffset = xOffset * scene.particleParallax;
+        backgroundXOffset = xOffset * scene.backgroundParallax;
+    }
+
+    private float boundRandom(float min, float max)
+    {
+        return boundRandom(random, min, max);
+    }
+
+    private static float boundRandom(Random random, float min, float max)
+    {
+        return min + random.nextFloat() * (max - min);
+    }
+}
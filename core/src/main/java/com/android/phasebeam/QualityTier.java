@@ -0,0 +1,40 @@
+package com.android.phasebeam;
+
+public class QualityTier
+{
+    // Ordered from best to cheapest, the governor steps through them by index
+    public static final QualityTier[] TIERS = new QualityTier[]
+    {
+            new QualityTier("charging", 1.0f, 60, 1.0f),
+            new QualityTier("high", 1.0f, 30, 1.0f),
+            new QualityTier("balanced", 0.75f, 30, 0.75f),
+            new QualityTier("low", 0.5f, 15, 0.5f),
+            new QualityTier("minimal", 0.3f, 15, 0.5f)
+    };
+
+    public static final int TIER_CHARGING = 0;
+    public static final int TIER_HIGH = 1;
+    public static final int TIER_BALANCED = 2;
+    public static final int TIER_LOW = 3;
+    public static final int TIER_MINIMAL = 4;
+
+    public final String name;
+    // Share of the configured particle count that is simulated and drawn
+    public final float particleFraction;
+    public final int targetFps;
+    public final float renderScale;
+
+    QualityTier(String name, float particleFraction, int targetFps, float renderScale)
+    {
+        this.name = name;
+        this.particleFraction = particleFraction;
+        this.targetFps = targetFps;
+        this.renderScale = renderScale;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + " (" + particleFraction + "x particles, " + targetFps + "fps, " + renderScale + "x scale)";
+    }
+}
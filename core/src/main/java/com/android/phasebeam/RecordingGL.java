@@ -0,0 +1,473 @@
+package com.android.phasebeam;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Records the command stream instead of drawing, so frame budgets can be checked on a JVM without a GPU
+// Object names count up from 1, locations are stable per program and name, and every status reports success
+public class RecordingGL implements GLApi
+{
+    private static final int GL_TRUE = 1;
+    private static final int GL_FRAMEBUFFER_COMPLETE = 0x8CD5;
+    private static final int GL_QUERY_RESULT_AVAILABLE = 0x8867;
+
+    // One recorded call, buffers are recorded by their size in bytes and arrays by copy
+    public static final class Call
+    {
+        public final String name;
+        public final Object[] args;
+
+        Call(String name, Object[] args)
+        {
+            this.name = name;
+            this.args = args;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + Arrays.deepToString(args);
+        }
+    }
+
+    //region Recording
+        private final List<Call> calls = new ArrayList<Call>();
+        private final HashMap<String, Integer> locations = new HashMap<String, Integer>();
+        private int nextName = 1;
+    //endregion
+
+    public List<Call> getCalls()
+    {
+        return calls;
+    }
+
+    public int count(String name)
+    {
+        int count = 0;
+
+        for (Call call : calls)
+        {
+            if (call.name.equals(name))
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    // Starts a new recording, object names keep counting so they stay unique
+    public void clear()
+    {
+        calls.clear();
+    }
+
+    private void record(String name, Object... args)
+    {
+        calls.add(new Call(name, args));
+    }
+
+    private int location(int program, String name)
+    {
+        String key = program + "/" + name;
+        Integer location = locations.get(key);
+
+        if (location == null)
+        {
+            location = locations.size();
+            locations.put(key, location);
+        }
+
+        return location;
+    }
+
+    //region State
+        @Override
+        public void glEnable(int cap)
+        {
+            record("glEnable", cap);
+        }
+
+        @Override
+        public void glDisable(int cap)
+        {
+            record("glDisable", cap);
+        }
+
+        @Override
+        public void glBlendFunc(int sfactor, int dfactor)
+        {
+            record("glBlendFunc", sfactor, dfactor);
+        }
+
+        @Override
+        public void glClearColor(float red, float green, float blue, float alpha)
+        {
+            record("glClearColor", red, green, blue, alpha);
+        }
+
+        @Override
+        public void glClear(int mask)
+        {
+            record("glClear", mask);
+        }
+
+        @Override
+        public void glViewport(int x, int y, int width, int height)
+        {
+            record("glViewport", x, y, width, height);
+        }
+    //endregion
+
+    //region Programs and shaders
+        @Override
+        public int glCreateShader(int type)
+        {
+            record("glCreateShader", type);
+
+            return nextName++;
+        }
+
+        @Override
+        public void glShaderSource(int shader, String source)
+        {
+            record("glShaderSource", shader, source);
+        }
+
+        @Override
+        public void glCompileShader(int shader)
+        {
+            record("glCompileShader", shader);
+        }
+
+        @Override
+        public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+        {
+            // Compile and link always succeed
+            params[offset] = GL_TRUE;
+            record("glGetShaderiv", shader, pname);
+        }
+
+        @Override
+        public String glGetShaderInfoLog(int shader)
+        {
+            record("glGetShaderInfoLog", shader);
+
+            return "";
+        }
+
+        @Override
+        public void glDeleteShader(int shader)
+        {
+            record("glDeleteShader", shader);
+        }
+
+        @Override
+        public int glCreateProgram()
+        {
+            record("glCreateProgram");
+
+            return nextName++;
+        }
+
+        @Override
+        public void glAttachShader(int program, int shader)
+        {
+            record("glAttachShader", program, shader);
+        }
+
+        @Override
+        public void glLinkProgram(int program)
+        {
+            record("glLinkProgram", program);
+        }
+
+        @Override
+        public void glGetProgramiv(int program, int pname, int[] params, int offset)
+        {
+            // Compile and link always succeed
+            params[offset] = GL_TRUE;
+            record("glGetProgramiv", program, pname);
+        }
+
+        @Override
+        public String glGetProgramInfoLog(int program)
+        {
+            record("glGetProgramInfoLog", program);
+
+            return "";
+        }
+
+        @Override
+        public void glDeleteProgram(int program)
+        {
+            record("glDeleteProgram", program);
+        }
+
+        @Override
+        public void glUseProgram(int program)
+        {
+            record("glUseProgram", program);
+        }
+
+        @Override
+        public int glGetAttribLocation(int program, String name)
+        {
+            record("glGetAttribLocation", program, name);
+
+            return location(program, name);
+        }
+
+        @Override
+        public int glGetUniformLocation(int program, String name)
+        {
+            record("glGetUniformLocation", program, name);
+
+            return location(program, name);
+        }
+    //endregion
+
+    //region Uniforms
+        @Override
+        public void glUniform1f(int location, float x)
+        {
+            record("glUniform1f", location, x);
+        }
+
+        @Override
+        public void glUniform2f(int location, float x, float y)
+        {
+            record("glUniform2f", location, x, y);
+        }
+
+        @Override
+        public void glUniform1i(int location, int x)
+        {
+            record("glUniform1i", location, x);
+        }
+
+        @Override
+        public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+        {
+            record("glUniformMatrix4fv", location, count, transpose, Arrays.copyOfRange(value, offset, offset + count * 16));
+        }
+    //endregion
+
+    //region Buffers and vertex arrays
+        @Override
+        public void glGenBuffers(int n, int[] buffers, int offset)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                buffers[offset + i] = nextName++;
+            }
+
+            record("glGenBuffers", n);
+        }
+
+        @Override
+        public void glDeleteBuffers(int n, int[] buffers, int offset)
+        {
+            record("glDeleteBuffers", n);
+        }
+
+        @Override
+        public void glBindBuffer(int target, int buffer)
+        {
+            record("glBindBuffer", target, buffer);
+        }
+
+        @Override
+        public void glBufferData(int target, int size, Buffer data, int usage)
+        {
+            record("glBufferData", target, size, CountingGL.byteSize(data), usage);
+        }
+
+        @Override
+        public void glBufferSubData(int target, int offset, int size, Buffer data)
+        {
+            record("glBufferSubData", target, offset, size, CountingGL.byteSize(data));
+        }
+
+        @Override
+        public void glEnableVertexAttribArray(int index)
+        {
+            record("glEnableVertexAttribArray", index);
+        }
+
+        @Override
+        public void glDisableVertexAttribArray(int index)
+        {
+            record("glDisableVertexAttribArray", index);
+        }
+
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+        {
+            record("glVertexAttribPointer", index, size, type, normalized, stride, offset);
+        }
+
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer pointer)
+        {
+            record("glVertexAttribPointer", index, size, type, normalized, stride, CountingGL.byteSize(pointer));
+        }
+    //endregion
+
+    //region Textures and framebuffers
+        @Override
+        public void glGenTextures(int n, int[] textures, int offset)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                textures[offset + i] = nextName++;
+            }
+
+            record("glGenTextures", n);
+        }
+
+        @Override
+        public void glDeleteTextures(int n, int[] textures, int offset)
+        {
+            record("glDeleteTextures", n);
+        }
+
+        @Override
+        public void glActiveTexture(int texture)
+        {
+            record("glActiveTexture", texture);
+        }
+
+        @Override
+        public void glBindTexture(int target, int texture)
+        {
+            record("glBindTexture", target, texture);
+        }
+
+        @Override
+        public void glTexParameteri(int target, int pname, int param)
+        {
+            record("glTexParameteri", target, pname, param);
+        }
+
+        @Override
+        public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+        {
+            record("glTexImage2D", target, level, internalformat, width, height, border, format, type, CountingGL.byteSize(pixels));
+        }
+
+        @Override
+        public void glGenerateMipmap(int target)
+        {
+            record("glGenerateMipmap", target);
+        }
+
+        @Override
+        public void glGenFramebuffers(int n, int[] framebuffers, int offset)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                framebuffers[offset + i] = nextName++;
+            }
+
+            record("glGenFramebuffers", n);
+        }
+
+        @Override
+        public void glDeleteFramebuffers(int n, int[] framebuffers, int offset)
+        {
+            record("glDeleteFramebuffers", n);
+        }
+
+        @Override
+        public void glBindFramebuffer(int target, int framebuffer)
+        {
+            record("glBindFramebuffer", target, framebuffer);
+        }
+
+        @Override
+        public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level)
+        {
+            record("glFramebufferTexture2D", target, attachment, textarget, texture, level);
+        }
+
+        @Override
+        public int glCheckFramebufferStatus(int target)
+        {
+            record("glCheckFramebufferStatus", target);
+
+            return GL_FRAMEBUFFER_COMPLETE;
+        }
+    //endregion
+
+    //region Drawing
+        @Override
+        public void glDrawArrays(int mode, int first, int count)
+        {
+            record("glDrawArrays", mode, first, count);
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, int offset)
+        {
+            record("glDrawElements", mode, count, type, offset);
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, Buffer indices)
+        {
+            record("glDrawElements", mode, count, type, CountingGL.byteSize(indices));
+        }
+    //endregion
+
+    //region Queries
+        @Override
+        public String glGetString(int name)
+        {
+            record("glGetString", name);
+
+            return "";
+        }
+
+        @Override
+        public void glGetIntegerv(int pname, int[] params, int offset)
+        {
+            params[offset] = 0;
+            record("glGetIntegerv", pname);
+        }
+
+        @Override
+        public void glGenQueries(int n, int[] ids, int offset)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                ids[offset + i] = nextName++;
+            }
+
+            record("glGenQueries", n);
+        }
+
+        @Override
+        public void glBeginQuery(int target, int id)
+        {
+            record("glBeginQuery", target, id);
+        }
+
+        @Override
+        public void glEndQuery(int target)
+        {
+            record("glEndQuery", target);
+        }
+
+        @Override
+        public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset)
+        {
+            // Every query has finished and took no time
+            params[offset] = pname == GL_QUERY_RESULT_AVAILABLE ? GL_TRUE : 0;
+            record("glGetQueryObjectuiv", id, pname);
+        }
+    //endregion
+}
@@ -0,0 +1,159 @@
+package com.android.phasebeam;
+
+// Adapts the offscreen render scale to measured frame times, dropping quickly under load and recovering slowly
+public class ResolutionController
+{
+    // Scales move in sixteenths so the render target is only reallocated for meaningful changes
+    public static final float SCALE_STEP = 1.0f / 16.0f;
+    public static final float MIN_SCALE = 0.5f;
+
+    // Frames are under pressure once they miss the budget or the GPU alone eats most of it
+    private static final float DROPPED_FRAME_FACTOR = 1.5f;
+    private static final float GPU_PRESSURE_FACTOR = 0.9f;
+
+    // Scaling up has to leave this much of the budget free, judged by the GPU time it would need
+    private static final float GPU_HEADROOM_FACTOR = 0.7f;
+
+    // How many pressured frames in a window trigger a step down
+    private static final int PRESSURE_WINDOW_FRAMES = 30;
+    private static final int PRESSURE_FRAME_LIMIT = 3;
+
+    // Calm frames before stepping up, doubled whenever a step up had to be taken back
+    private static final int HEADROOM_FRAMES = 120;
+    private static final int MAX_HEADROOM_FRAMES = HEADROOM_FRAMES * 16;
+
+    // GPU timings arrive a few frames late, so frames right after a change still show the old scale
+    private static final int SETTLE_FRAMES = 6;
+
+    // Gaps this long mean the wallpaper was hidden or idle rather than slow
+    private static final long IDLE_GAP_NANOS = 1000000000L;
+
+    // FramePacer.FPS_NATIVE follows vsync, which is assumed to be 60Hz
+    private static final int NATIVE_FPS = 60;
+
+    private volatile long budgetNanos = 1000000000L / NATIVE_FPS;
+    private volatile float maxScale = 1.0f;
+    private volatile boolean adaptive = true;
+
+    private float scale = 1.0f;
+    private int windowFrames;
+    private int pressureFrames;
+    private int calmFrames;
+    private int headroomFrames = HEADROOM_FRAMES;
+    private int framesSinceStepUp = Integer.MAX_VALUE;
+    private int settleFrames;
+
+    public void setTargetFps(int targetFps)
+    {
+        budgetNanos = 1000000000L / (targetFps > 0 ? targetFps : NATIVE_FPS);
+    }
+
+    // Upper bound from the quality tier, without adaptation this is the scale used
+    public void setMaxScale(float maxScale)
+    {
+        this.maxScale = maxScale;
+    }
+
+    public void setAdaptive(boolean adaptive)
+    {
+        this.adaptive = adaptive;
+    }
+
+    public float getScale()
+    {
+        return scale;
+    }
+
+    public float getMaxScale()
+    {
+        return maxScale;
+    }
+
+    // Call once per frame with the frame-to-frame interval and the GPU time, or a negative one when unknown
+    public float update(long intervalNanos, long gpuNanos)
+    {
+        float ceiling = maxScale;
+        float floor = Math.min(MIN_SCALE, ceiling);
+
+        if (!adaptive)
+        {
+            scale = ceiling;
+            return scale;
+        }
+
+        if (scale > ceiling || scale < floor)
+        {
+            scale = Math.max(floor, Math.min(ceiling, scale));
+            resetWindow();
+        }
+
+        if (settleFrames > 0)
+        {
+            settleFrames--;
+            return scale;
+        }
+
+        long budget = budgetNanos;
+        boolean pressured = (intervalNanos > budget * DROPPED_FRAME_FACTOR && intervalNanos < IDLE_GAP_NANOS)
+                || (gpuNanos >= 0 && gpuNanos > budget * GPU_PRESSURE_FACTOR);
+
+        if (framesSinceStepUp < Integer.MAX_VALUE)
+        {
+            framesSinceStepUp++;
+        }
+
+        windowFrames++;
+
+        if (pressured)
+        {
+            pressureFrames++;
+            calmFrames = 0;
+        }
+        else
+        {
+            calmFrames++;
+        }
+
+        if (pressureFrames >= PRESSURE_FRAME_LIMIT && scale > floor)
+        {
+            // A step up that couldn't hold makes the next attempt wait longer
+            if (framesSinceStepUp < headroomFrames)
+            {
+                headroomFrames = Math.min(MAX_HEADROOM_FRAMES, headroomFrames * 2);
+            }
+
+            scale = Math.max(floor, scale - SCALE_STEP);
+            resetWindow();
+        }
+        else if (calmFrames >= headroomFrames && scale < ceiling)
+        {
+            float nextScale = Math.min(ceiling, scale + SCALE_STEP);
+
+            // Fill cost grows with the pixel count, so with a GPU time it can be predicted before committing
+            float pixelRatio = (nextScale * nextScale) / (scale * scale);
+
+            if (gpuNanos < 0 || gpuNanos * pixelRatio < budget * GPU_HEADROOM_FACTOR)
+            {
+                scale = nextScale;
+                framesSinceStepUp = 0;
+            }
+
+            resetWindow();
+        }
+        else if (windowFrames >= PRESSURE_WINDOW_FRAMES)
+        {
+            windowFrames = 0;
+            pressureFrames = 0;
+        }
+
+        return scale;
+    }
+
+    private void resetWindow()
+    {
+        settleFrames = SETTLE_FRAMES;
+        windowFrames = 0;
+        pressureFrames = 0;
+        calmFrames = 0;
+    }
+}
@@ -0,0 +1,735 @@
+package com.android.phasebeam;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+// The per-frame draw sequence of the background and particles, issued through GLApi only so the same frames
+// run against a RecordingGL on the JVM. Programs, static buffers and the atlas are created by the caller
+public class SceneRenderer
+{
+    // Particles are either moved by ParticleManager each frame or by dot_vs.glsl from static seeds
+    public static final int ANIMATION_CPU = 0;
+    public static final int ANIMATION_GPU = 1;
+
+    // Particles are either point sprites or quads trimmed to the visible part of each sprite, the latter
+    // only with CPU animation since the GPU seeds hold one vertex per particle
+    public static final int SPRITE_POINTS = 0;
+    public static final int SPRITE_QUADS = 1;
+
+    // GLES20 values, core can't see android.opengl
+    private static final int GL_COLOR_BUFFER_BIT = 0x4000;
+    private static final int GL_BLEND = 0x0BE2;
+    private static final int GL_POINTS = 0x0000;
+    private static final int GL_TRIANGLES = 0x0004;
+    private static final int GL_TRIANGLE_STRIP = 0x0005;
+    private static final int GL_UNSIGNED_BYTE = 0x1401;
+    private static final int GL_SHORT = 0x1402;
+    private static final int GL_UNSIGNED_SHORT = 0x1403;
+    private static final int GL_FLOAT = 0x1406;
+    private static final int GL_ARRAY_BUFFER = 0x8892;
+    private static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    private static final int GL_STATIC_DRAW = 0x88E4;
+    private static final int GL_FRAMEBUFFER = 0x8D40;
+    private static final int GL_TEXTURE_2D = 0x0DE1;
+    private static final int GL_TEXTURE0 = 0x84C0;
+
+    // The shader's float time loses precision as it grows, so every this many ticks the seeds are moved ahead to
+    // where the particles are and the time starts over. A few minutes, the next frame's time stays well below it
+    private static final float REBASE_TICKS = 4096.0f;
+
+    //region Data
+        private final StateCacheGL gl;
+        private final GLResourceManager resources;
+        private final ParticleManager particleManager;
+        private final PackedMesh backgroundMesh;
+        private final boolean useVbo;
+        private int activeAnimationMode = -1;
+        private int activeSpriteMode = -1;
+        private long animationStartNanos;
+        private boolean animationRestarted;
+    //endregion
+
+    //region Frame timing, what the last frame spent outside of draw submission
+        private long simulationNanos;
+        private long uploadNanos;
+    //endregion
+
+    //region Render target
+        private int renderWidth;
+        private int renderHeight;
+        private float scaleSize;
+        private final float[] mvpMatrix = new float[16];
+    //endregion
+
+    //region Buffers
+        // Indexed background mesh, static VBOs owned by the caller
+        private int backgroundVboId;
+        private int backgroundIndexVboId;
+
+        // Streaming buffer for the per-frame particle upload of dots and beams
+        private final StreamingVertexBuffer particleStream;
+
+        // Particles expanded to four vertices each for SPRITE_QUADS, with a static index buffer
+        private final StreamingVertexBuffer quadStream;
+        private float[] quadData = new float[0];
+        private short[] quadIndices = new short[0];
+        private int quadIndexCapacity;
+        private ShortBuffer quadIndexBuffer;
+        private int quadIndexVboId;
+
+        // Static seed buffer for the GPU animation, grown along with the particle count
+        private float[] seedData = new float[0];
+        private FloatBuffer seedBuffer;
+        private int seedVboId;
+
+        // Fullscreen quad as a triangle strip, drawn from client memory
+        private final FloatBuffer blitVertexBuffer = StreamingVertexBuffer.allocateFloatBuffer(8);
+
+        // Texture atlas for particles, dot in the left tile and beam in the right one
+        private int particleTextureId;
+    //endregion
+
+    //region Programs and locations
+        private int backgroundProgramId;
+        private int aBackgroundPositionLocation;
+        private int aBackgroundColorLocation;
+        private int uBackgroundXOffsetLocation;
+        private int uBackgroundPositionScaleLocation;
+        private int uBackgroundColorScaleLocation;
+
+        private int particleProgramId;
+        private int aParticlePositionLocation;
+        private int aParticleSpriteLocation;
+        private int uParticleMVPMatrixLocation;
+        private int uParticleScaleLocation;
+        private int uParticleXOffsetLocation;
+        private int uParticleTextureLocaiton;
+
+        // Only present with quad sprites
+        private int uParticleViewportSizeLocation;
+
+        // Only present with GPU animation
+        private int aParticleXVelocityLocation;
+        private int uParticleTimeLocation;
+        private int uParticleYSpeedLocation;
+        private int uParticleYBoundLocation;
+
+        private int blitProgramId;
+        private int aBlitPositionLocation;
+        private int uBlitTextureLocation;
+    //endregion
+
+    // Without VBOs every draw reads client memory, which is what GL ES 2 offers before Gingerbread
+    public SceneRenderer(StateCacheGL gl, GLResourceManager resources, ParticleManager particleManager,
+                         PackedMesh backgroundMesh, boolean useVbo)
+    {
+        this.gl = gl;
+        this.resources = resources;
+        this.particleManager = particleManager;
+        this.backgroundMesh = backgroundMesh;
+        this.useVbo = useVbo;
+        this.particleStream = new StreamingVertexBuffer(gl, resources, "particle-stream", particleManager.getParticleData().length, useVbo);
+        this.quadStream = new StreamingVertexBuffer(gl, resources, "quad-stream", 0, useVbo);
+
+        blitVertexBuffer.put(new float[] {-1.0f, -1.0f, 1.0f, -1.0f, -1.0f, 1.0f, 1.0f, 1.0f}).position(0);
+
+        trackCpuBuffers();
+    }
+
+    public static boolean drawsQuads(int animationMode, int spriteMode)
+    {
+        return spriteMode == SPRITE_QUADS && animationMode == ANIMATION_CPU;
+    }
+
+    //region Setup, GL thread only
+        // Must be called whenever a new context has been created, before any of the programs are set
+        public void createBuffers()
+        {
+            if (useVbo)
+            {
+                int[] buffers = new int[2];
+                gl.glGenBuffers(2, buffers, 0);
+                seedVboId = buffers[0];
+                quadIndexVboId = buffers[1];
+                resources.track(GLResourceManager.BUFFER, seedVboId, 0);
+                resources.track(GLResourceManager.BUFFER, quadIndexVboId, 0);
+            }
+
+            // The index buffer is refilled for the new context on first use
+            quadIndexCapacity = 0;
+
+            particleStream.create();
+            quadStream.create();
+            particleStream.upload(particleManager.getRenderData(), particleManager.getRenderData().length);
+        }
+
+        // The vertex and index VBOs are only read when VBOs are used
+        public void setBackground(int programId, int vboId, int indexVboId)
+        {
+            backgroundProgramId = programId;
+            backgroundVboId = vboId;
+            backgroundIndexVboId = indexVboId;
+
+            // Fetch shader locations as Mali/Adreno sort these differently
+            aBackgroundPositionLocation = gl.glGetAttribLocation(programId, "aPosition");
+            aBackgroundColorLocation = gl.glGetAttribLocation(programId, "aColor");
+            uBackgroundXOffsetLocation = gl.glGetUniformLocation(programId, "uXOffset");
+            uBackgroundPositionScaleLocation = gl.glGetUniformLocation(programId, "uPositionScale");
+            uBackgroundColorScaleLocation = gl.glGetUniformLocation(programId, "uColorScale");
+        }
+
+        public void setParticleTexture(int textureId)
+        {
+            particleTextureId = textureId;
+        }
+
+        public void setBlitProgram(int programId)
+        {
+            blitProgramId = programId;
+
+            aBlitPositionLocation = gl.glGetAttribLocation(programId, "aPosition");
+            uBlitTextureLocation = gl.glGetUniformLocation(programId, "uTexture");
+        }
+
+        // The program has to be built for the modes, see needsParticleProgram
+        public void setParticleProgram(int programId, int animationMode, int spriteMode)
+        {
+            particleProgramId = programId;
+            activeAnimationMode = animationMode;
+            activeSpriteMode = spriteMode;
+
+            // Fetch shader locations as Mali/Adreno sort these differently
+            aParticlePositionLocation = gl.glGetAttribLocation(programId, "aPosition");
+            uParticleMVPMatrixLocation = gl.glGetUniformLocation(programId, "uMVPMatrix");
+            uParticleScaleLocation = gl.glGetUniformLocation(programId, "uScaleSize");
+            uParticleXOffsetLocation = gl.glGetUniformLocation(programId, "uXOffset");
+            uParticleTextureLocaiton = gl.glGetUniformLocation(programId, "uTexture");
+            aParticleSpriteLocation = gl.glGetAttribLocation(programId, "aSprite");
+
+            if (drawsQuads())
+            {
+                uParticleViewportSizeLocation = gl.glGetUniformLocation(programId, "uViewportSize");
+            }
+
+            if (activeAnimationMode == ANIMATION_GPU)
+            {
+                aParticleXVelocityLocation = gl.glGetAttribLocation(programId, "aXVelocity");
+                uParticleTimeLocation = gl.glGetUniformLocation(programId, "uTime");
+                uParticleYSpeedLocation = gl.glGetUniformLocation(programId, "uYSpeed");
+                uParticleYBoundLocation = gl.glGetUniformLocation(programId, "uYBound");
+
+                setupParticleSeeds();
+            }
+        }
+
+        public boolean needsParticleProgram(int animationMode, int spriteMode)
+        {
+            return animationMode != activeAnimationMode || spriteMode != activeSpriteMode;
+        }
+
+        public int getParticleProgramId()
+        {
+            return particleProgramId;
+        }
+
+        public void setSurfaceSize(int width, int height)
+        {
+            float aspectRatio;
+            if (width > height)
+            {
+                aspectRatio = (float) height / width;
+                MatrixUtils.frustumM(mvpMatrix, 0, -aspectRatio, aspectRatio, -1.0f, 1.0f, 1.0f, 100.0f);
+            }
+            else
+            {
+                aspectRatio = (float) width / height;
+                MatrixUtils.frustumM(mvpMatrix, 0, -1.0f, 1.0f, -aspectRatio, aspectRatio, 1.0f, 100.0f);
+            }
+
+            // Apply additional transformations like the original code
+            MatrixUtils.rotateM(mvpMatrix, 0, 180.0f, 0.0f, 1.0f, 0.0f);
+            MatrixUtils.scaleM(mvpMatrix, 0, -1.0f, 1.0f, 1.0f);
+            MatrixUtils.translateM(mvpMatrix, 0, 0.0f, 0.0f, 1.0f);
+        }
+
+        // The size of whatever is bound to draw into, point sizes are in its pixels
+        public void setRenderTarget(int width, int height, float scaleSize)
+        {
+            renderWidth = width;
+            renderHeight = height;
+            this.scaleSize = scaleSize;
+        }
+
+        // Resizes the particle arrays and picks how many of them are simulated and drawn
+        public void applyParticleCount(int requestedParticleCount, float particleFraction)
+        {
+            if (requestedParticleCount != particleManager.getParticleCount())
+            {
+                particleManager.setParticleCount(requestedParticleCount);
+                trackCpuBuffers();
+
+                // The seeds have to cover the new particles as well
+                if (activeAnimationMode == ANIMATION_GPU)
+                {
+                    setupParticleSeeds();
+                }
+            }
+
+            int activeCount = Math.max(1, Math.round(particleManager.getParticleCount() * particleFraction));
+
+            if (activeCount != particleManager.getActiveParticleCount())
+            {
+                particleManager.setActiveParticleCount(activeCount);
+            }
+        }
+
+        private void setupParticleSeeds()
+        {
+            // The seeds start from wherever the particles are right now
+            int seedLength = particleManager.getVertexCount() * ParticleManager.SEED_PROPERTY_COUNT;
+
+            if (seedData.length < seedLength)
+            {
+                seedData = new float[seedLength];
+                seedBuffer = StreamingVertexBuffer.allocateFloatBuffer(seedLength);
+                trackCpuBuffers();
+            }
+
+            particleManager.fillSeedData(seedData);
+            uploadSeeds(seedLength);
+
+            // The animation starts from the seeds on the next frame
+            animationRestarted = true;
+        }
+
+        private void uploadSeeds(int seedLength)
+        {
+            seedBuffer.put(seedData, 0, seedLength).position(0);
+
+            if (useVbo)
+            {
+                gl.glBindBuffer(GL_ARRAY_BUFFER, seedVboId);
+                gl.glBufferData(GL_ARRAY_BUFFER, seedLength * 4, seedBuffer, GL_STATIC_DRAW);
+                resources.track(GLResourceManager.BUFFER, seedVboId, seedLength * 4);
+            }
+        }
+    //endregion
+
+    //region Drawing
+        // Clears the bound target, advances the particles by the clock's steps and draws background and particles
+        public void drawScene(long frameNanos, int simulationSteps, float alpha)
+        {
+            simulationNanos = 0;
+            uploadNanos = 0;
+
+            gl.glClear(GL_COLOR_BUFFER_BIT);
+
+            particleManager.tickXOffset(frameNanos);
+            particleManager.tickTouches(frameNanos);
+            drawBackground();
+
+            if (activeAnimationMode == ANIMATION_GPU)
+            {
+                drawAnimatedParticles(animationTicks(frameNanos));
+            }
+            else
+            {
+                // Update, upload and draw dots and beams
+                long simulationStart = System.nanoTime();
+                particleManager.updateParticles(simulationSteps);
+                particleManager.interpolate(alpha);
+
+                long uploadStart = System.nanoTime();
+                simulationNanos = uploadStart - simulationStart;
+
+                if (drawsQuads())
+                {
+                    uploadParticleQuads();
+                }
+                else
+                {
+                    particleStream.upload(particleManager.getRenderData(), particleManager.getActiveFloatCount());
+                }
+
+                uploadNanos = System.nanoTime() - uploadStart;
+
+                if (drawsQuads())
+                {
+                    drawParticleQuads();
+                }
+                else
+                {
+                    drawParticles();
+                }
+            }
+        }
+
+        // Single bilinear pass from an offscreen color texture onto the whole surface
+        public void drawUpscale(int textureId, int surfaceWidth, int surfaceHeight)
+        {
+            gl.glBindFramebuffer(GL_FRAMEBUFFER, 0);
+            gl.glViewport(0, 0, surfaceWidth, surfaceHeight);
+
+            // Every pixel is overwritten, the clear only tells tiled GPUs not to load the old contents
+            gl.glClear(GL_COLOR_BUFFER_BIT);
+            gl.glDisable(GL_BLEND);
+
+            gl.glUseProgram(blitProgramId);
+            gl.useVertexAttributes(StateCacheGL.attributeBit(aBlitPositionLocation));
+
+            // Client memory, so no VBO may be bound
+            if (useVbo)
+            {
+                gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+            }
+
+            gl.glVertexAttribPointer(aBlitPositionLocation, 2, GL_FLOAT, false, 8, blitVertexBuffer.position(0));
+
+            gl.glActiveTexture(GL_TEXTURE0);
+            gl.glBindTexture(GL_TEXTURE_2D, textureId);
+            gl.glUniform1i(uBlitTextureLocation, 0);
+
+            gl.glDrawArrays(GL_TRIANGLE_STRIP, 0, 4);
+
+            gl.glEnable(GL_BLEND);
+        }
+
+        public int getAnimationMode()
+        {
+            return activeAnimationMode;
+        }
+
+        // Zero with GPU animation, which has nothing to simulate or upload
+        public long getSimulationNanos()
+        {
+            return simulationNanos;
+        }
+
+        public long getUploadNanos()
+        {
+            return uploadNanos;
+        }
+
+        private void drawBackground()
+        {
+            gl.glUseProgram(backgroundProgramId);
+
+            // Attribute arrays are global state, so every draw names exactly the ones it reads
+            gl.useVertexAttributes(StateCacheGL.attributeBit(aBackgroundPositionLocation)
+                    | StateCacheGL.attributeBit(aBackgroundColorLocation));
+
+            if (useVbo)
+            {
+                // Bind VBOs and enable vertex attributes
+                gl.glBindBuffer(GL_ARRAY_BUFFER, backgroundVboId);
+                gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, backgroundIndexVboId);
+
+                // position as normalized shorts
+                gl.glVertexAttribPointer(aBackgroundPositionLocation, 2, GL_SHORT, true,
+                        PackedMesh.VERTEX_STRIDE, PackedMesh.POSITION_OFFSET);
+
+                // color as normalized unsigned bytes
+                gl.glVertexAttribPointer(aBackgroundColorLocation, 3, GL_UNSIGNED_BYTE, true,
+                        PackedMesh.VERTEX_STRIDE, PackedMesh.COLOR_OFFSET);
+            }
+            else
+            {
+                // position x, y
+                gl.glVertexAttribPointer(aBackgroundPositionLocation, 2, GL_SHORT, true,
+                        PackedMesh.VERTEX_STRIDE, backgroundMesh.vertices.position(PackedMesh.POSITION_OFFSET));
+
+                // color r, g, b
+                gl.glVertexAttribPointer(aBackgroundColorLocation, 3, GL_UNSIGNED_BYTE, true,
+                        PackedMesh.VERTEX_STRIDE, backgroundMesh.vertices.position(PackedMesh.COLOR_OFFSET));
+            }
+
+            // xOffset
+            gl.glUniform1f(uBackgroundXOffsetLocation, particleManager.backgroundXOffset);
+
+            // Undo the quantization ranges
+            gl.glUniform2f(uBackgroundPositionScaleLocation, backgroundMesh.positionScaleX, backgroundMesh.positionScaleY);
+            gl.glUniform1f(uBackgroundColorScaleLocation, backgroundMesh.colorScale);
+
+            // Draw the indexed triangles
+            if (useVbo)
+            {
+                gl.glDrawElements(GL_TRIANGLES, backgroundMesh.indexCount, GL_UNSIGNED_SHORT, 0);
+            }
+            else
+            {
+                gl.glDrawElements(GL_TRIANGLES, backgroundMesh.indexCount, GL_UNSIGNED_SHORT,
+                        backgroundMesh.indices.position(0));
+            }
+        }
+
+        // Dots and beams go out in a single draw, the sprite attribute picks their atlas tile
+        // Expects particleStream to have just been uploaded, which leaves its VBO bound
+        private void drawParticles()
+        {
+            gl.glUseProgram(particleProgramId);
+
+            int stride = particleManager.getParticlePropertyCount() * 4;
+
+            gl.useVertexAttributes(StateCacheGL.attributeBit(aParticlePositionLocation)
+                    | StateCacheGL.attributeBit(aParticleSpriteLocation));
+
+            if (useVbo)
+            {
+                // Pass float x, y, z and sprite
+                gl.glVertexAttribPointer(aParticlePositionLocation, 3, GL_FLOAT, false, stride, 0);
+                gl.glVertexAttribPointer(aParticleSpriteLocation, 1, GL_FLOAT, false, stride, 12);
+            }
+            else
+            {
+                // Pass float x, y, z and sprite
+                gl.glVertexAttribPointer(aParticlePositionLocation, 3, GL_FLOAT, false, stride, particleStream.getClientBuffer());
+                gl.glVertexAttribPointer(aParticleSpriteLocation, 1, GL_FLOAT, false, stride, particleStream.getClientBuffer().position(3));
+            }
+
+            setParticleUniforms();
+
+            gl.glDrawArrays(GL_POINTS, 0, particleManager.getActiveVertexCount());
+        }
+
+        // Four vertices per particle, the quad index buffer only reaches 16 bits so large counts take several draws
+        private void drawParticleQuads()
+        {
+            gl.glUseProgram(particleProgramId);
+
+            int stride = particleManager.getParticlePropertyCount() * 4;
+
+            gl.useVertexAttributes(StateCacheGL.attributeBit(aParticlePositionLocation)
+                    | StateCacheGL.attributeBit(aParticleSpriteLocation));
+
+            setParticleUniforms();
+            gl.glUniform2f(uParticleViewportSizeLocation, renderWidth, renderHeight);
+
+            if (useVbo)
+            {
+                gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, quadIndexVboId);
+            }
+
+            int quadCount = particleManager.getActiveVertexCount();
+
+            for (int firstQuad = 0; firstQuad < quadCount; firstQuad += SpriteQuads.MAX_QUADS_PER_BATCH)
+            {
+                int batchQuads = Math.min(SpriteQuads.MAX_QUADS_PER_BATCH, quadCount - firstQuad);
+                int firstVertex = firstQuad * SpriteQuads.VERTICES_PER_QUAD;
+
+                if (useVbo)
+                {
+                    gl.glVertexAttribPointer(aParticlePositionLocation, 3, GL_FLOAT, false, stride, firstVertex * stride);
+                    gl.glVertexAttribPointer(aParticleSpriteLocation, 1, GL_FLOAT, false, stride, firstVertex * stride + 12);
+                    gl.glDrawElements(GL_TRIANGLES, batchQuads * SpriteQuads.INDICES_PER_QUAD, GL_UNSIGNED_SHORT, 0);
+                }
+                else
+                {
+                    int firstFloat = firstVertex * particleManager.getParticlePropertyCount();
+
+                    gl.glVertexAttribPointer(aParticlePositionLocation, 3, GL_FLOAT, false, stride,
+                            quadStream.getClientBuffer().position(firstFloat));
+                    gl.glVertexAttribPointer(aParticleSpriteLocation, 1, GL_FLOAT, false, stride,
+                            quadStream.getClientBuffer().position(firstFloat + 3));
+                    gl.glDrawElements(GL_TRIANGLES, batchQuads * SpriteQuads.INDICES_PER_QUAD, GL_UNSIGNED_SHORT,
+                            quadIndexBuffer.position(0));
+                }
+            }
+        }
+
+        // Expands and uploads the interpolated particles, growing the shared index buffer when needed
+        private void uploadParticleQuads()
+        {
+            int vertexCount = particleManager.getActiveVertexCount() * SpriteQuads.VERTICES_PER_QUAD;
+            int floatCount = vertexCount * particleManager.getParticlePropertyCount();
+
+            if (quadData.length < floatCount)
+            {
+                quadData = new float[particleManager.getVertexCount() * SpriteQuads.VERTICES_PER_QUAD
+                        * particleManager.getParticlePropertyCount()];
+                trackCpuBuffers();
+            }
+
+            SpriteQuads.expand(particleManager.getRenderData(), particleManager.getActiveVertexCount(),
+                    particleManager.getParticlePropertyCount(), quadData);
+
+            ensureQuadIndices(Math.min(SpriteQuads.MAX_QUADS_PER_BATCH, particleManager.getActiveVertexCount()));
+            quadStream.upload(quadData, floatCount);
+        }
+
+        private void ensureQuadIndices(int quadCount)
+        {
+            if (quadCount <= quadIndexCapacity)
+            {
+                return;
+            }
+
+            int indexCount = quadCount * SpriteQuads.INDICES_PER_QUAD;
+
+            if (quadIndices.length < indexCount)
+            {
+                quadIndices = new short[indexCount];
+                quadIndexBuffer = ByteBuffer.allocateDirect(indexCount * 2)
+                        .order(ByteOrder.nativeOrder()).asShortBuffer();
+                trackCpuBuffers();
+            }
+
+            SpriteQuads.fillIndices(quadIndices, quadCount);
+            quadIndexBuffer.position(0);
+            quadIndexBuffer.put(quadIndices, 0, indexCount).position(0);
+
+            if (useVbo)
+            {
+                gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, quadIndexVboId);
+                gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexCount * 2, quadIndexBuffer, GL_STATIC_DRAW);
+                resources.track(GLResourceManager.BUFFER, quadIndexVboId, indexCount * 2);
+            }
+
+            quadIndexCapacity = quadCount;
+        }
+
+        private boolean drawsQuads()
+        {
+            return drawsQuads(activeAnimationMode, activeSpriteMode);
+        }
+
+        // Time since the seeds in ticks, re-basing them whenever it reaches REBASE_TICKS
+        private float animationTicks(long frameNanos)
+        {
+            if (animationRestarted)
+            {
+                animationStartNanos = frameNanos;
+                animationRestarted = false;
+            }
+
+            float ticks = (frameNanos - animationStartNanos) / ParticleManager.TICK_NANOS;
+
+            if (ticks >= REBASE_TICKS)
+            {
+                // Whole periods only, so the time left over matches what the shader would have been given
+                float rebaseTicks = (float) Math.floor(ticks / REBASE_TICKS) * REBASE_TICKS;
+
+                particleManager.advanceSeeds(seedData, rebaseTicks);
+                uploadSeeds(particleManager.getVertexCount() * ParticleManager.SEED_PROPERTY_COUNT);
+
+                animationStartNanos += (long) ((double) rebaseTicks * ParticleManager.TICK_NANOS);
+                ticks = (frameNanos - animationStartNanos) / ParticleManager.TICK_NANOS;
+            }
+
+            return ticks;
+        }
+
+        private void drawAnimatedParticles(float ticks)
+        {
+            gl.glUseProgram(particleProgramId);
+
+            int stride = ParticleManager.SEED_PROPERTY_COUNT * 4;
+
+            gl.useVertexAttributes(StateCacheGL.attributeBit(aParticlePositionLocation)
+                    | StateCacheGL.attributeBit(aParticleSpriteLocation)
+                    | StateCacheGL.attributeBit(aParticleXVelocityLocation));
+
+            if (useVbo)
+            {
+                gl.glBindBuffer(GL_ARRAY_BUFFER, seedVboId);
+
+                // Pass float x, y, z, sprite and x velocity
+                gl.glVertexAttribPointer(aParticlePositionLocation, 3, GL_FLOAT, false, stride, 0);
+                gl.glVertexAttribPointer(aParticleSpriteLocation, 1, GL_FLOAT, false, stride, 12);
+                gl.glVertexAttribPointer(aParticleXVelocityLocation, 1, GL_FLOAT, false, stride, 16);
+            }
+            else
+            {
+                // Pass float x, y, z, sprite and x velocity
+                gl.glVertexAttribPointer(aParticlePositionLocation, 3, GL_FLOAT, false, stride, seedBuffer.position(0));
+                gl.glVertexAttribPointer(aParticleSpriteLocation, 1, GL_FLOAT, false, stride, seedBuffer.position(3));
+                gl.glVertexAttribPointer(aParticleXVelocityLocation, 1, GL_FLOAT, false, stride, seedBuffer.position(4));
+            }
+
+            // Pass animation state
+            gl.glUniform1f(uParticleTimeLocation, ticks);
+            gl.glUniform2f(uParticleYSpeedLocation, particleManager.getDots().ySpeed, particleManager.getBeams().ySpeed);
+            gl.glUniform2f(uParticleYBoundLocation, particleManager.getDots().yBound, particleManager.getBeams().yBound);
+
+            setParticleUniforms();
+
+            gl.glDrawArrays(GL_POINTS, 0, particleManager.getActiveVertexCount());
+        }
+
+        private void setParticleUniforms()
+        {
+            // Pass view matrix
+            gl.glUniformMatrix4fv(uParticleMVPMatrixLocation, 1, false, mvpMatrix, 0);
+
+            // Pass scale size
+            gl.glUniform1f(uParticleScaleLocation, scaleSize);
+
+            // Pass x offset
+            gl.glUniform1f(uParticleXOffsetLocation, particleManager.particleXOffset);
+
+            // Bind particle texture atlas
+            gl.glActiveTexture(GL_TEXTURE0);
+            gl.glBindTexture(GL_TEXTURE_2D, particleTextureId);
+            gl.glUniform1i(uParticleTextureLocaiton, 0);
+        }
+    //endregion
+
+    //region Memory
+        // Only what gets rebuilt on demand goes: staging arrays are refilled when they grow, and a stream
+        // the current modes don't draw from is allocated again on its next upload
+        public void trimCpuBuffers()
+        {
+            // The client paths draw from these, with VBOs they only stage the uploads. The GPU animation keeps its
+            // seeds either way, re-basing moves them ahead
+            if (useVbo && activeAnimationMode != ANIMATION_GPU)
+            {
+                seedData = new float[0];
+                seedBuffer = null;
+            }
+
+            if (useVbo)
+            {
+                quadIndices = new short[0];
+                quadIndexBuffer = null;
+            }
+
+            if (activeAnimationMode == ANIMATION_GPU || drawsQuads())
+            {
+                particleStream.trimClientBuffer();
+            }
+
+            if (!drawsQuads())
+            {
+                quadData = new float[0];
+                quadStream.trimClientBuffer();
+            }
+
+            trackCpuBuffers();
+        }
+
+        // After the context went away, nothing draws before the rebuild refills these
+        public void releaseCpuBuffers()
+        {
+            seedData = new float[0];
+            seedBuffer = null;
+            quadData = new float[0];
+            quadIndices = new short[0];
+            quadIndexBuffer = null;
+            particleStream.trimClientBuffer();
+            quadStream.trimClientBuffer();
+            trackCpuBuffers();
+        }
+
+        // Heap arrays and direct buffers allocated here, the streams report their own
+        private void trackCpuBuffers()
+        {
+            // Simulation state, previous state and interpolated render data
+            resources.trackCpu("particles", 3L * particleManager.getParticleArrayDataSize());
+
+            resources.trackCpu("seeds", seedData.length * 4L + (seedBuffer != null ? seedBuffer.capacity() * 4L : 0));
+            resources.trackCpu("quads", quadData.length * 4L + quadIndices.length * 2L
+                    + (quadIndexBuffer != null ? quadIndexBuffer.capacity() * 2L : 0));
+        }
+    //endregion
+}
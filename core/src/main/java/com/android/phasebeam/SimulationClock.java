@@ -0,0 +1,58 @@
+package com.android.phasebeam;
+
+// Turns variable frame times into a whole number of fixed simulation steps plus a blend factor
+// for drawing between the last two states, so motion no longer depends on the display rate
+public class SimulationClock
+{
+    private final long stepNanos;
+    private final long maxFrameNanos;
+
+    private long lastFrameNanos;
+    private long accumulatorNanos;
+    private boolean started;
+
+    // Frames longer than maxFrameNanos count as that long, a resume only catches up that far
+    public SimulationClock(long stepNanos, long maxFrameNanos)
+    {
+        this.stepNanos = stepNanos;
+        this.maxFrameNanos = maxFrameNanos;
+    }
+
+    public long getStepNanos()
+    {
+        return stepNanos;
+    }
+
+    // Returns how many steps to simulate for a frame starting at frameTimeNanos, System.nanoTime() based
+    public int advance(long frameTimeNanos)
+    {
+        if (!started)
+        {
+            started = true;
+            lastFrameNanos = frameTimeNanos;
+            return 0;
+        }
+
+        long elapsedNanos = Math.max(0, Math.min(maxFrameNanos, frameTimeNanos - lastFrameNanos));
+        lastFrameNanos = frameTimeNanos;
+        accumulatorNanos += elapsedNanos;
+
+        int steps = (int) (accumulatorNanos / stepNanos);
+        accumulatorNanos -= steps * stepNanos;
+
+        return steps;
+    }
+
+    // How far the frame is past the newest state, in steps from 0 to 1
+    public float getAlpha()
+    {
+        return (float) accumulatorNanos / stepNanos;
+    }
+
+    // The next frame starts over without catching up on anything
+    public void reset()
+    {
+        started = false;
+        accumulatorNanos = 0;
+    }
+}
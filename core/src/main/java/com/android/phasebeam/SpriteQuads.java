@@ -0,0 +1,55 @@
+package com.android.phasebeam;
+
+// Expands point particles into quads for the QUAD_SPRITES path of dot_vs.glsl
+public final class SpriteQuads
+{
+    public static final int VERTICES_PER_QUAD = 4;
+    public static final int INDICES_PER_QUAD = 6;
+
+    // 16 bit indices reach this many quads, more are drawn in batches
+    public static final int MAX_QUADS_PER_BATCH = 65536 / VERTICES_PER_QUAD;
+
+    private SpriteQuads() {}
+
+    // Repeats every x, y, z, sprite point four times, packing the corner index into the sprite as
+    // sprite + 2 * corner so the vertex layout stays the same as for points
+    public static void expand(float[] points, int pointCount, int propertyCount, float[] quads)
+    {
+        int quadIndex = 0;
+
+        for (int i = 0; i < pointCount; i++)
+        {
+            int index = i * propertyCount;
+            float x = points[index];
+            float y = points[index + 1];
+            float z = points[index + 2];
+            float sprite = points[index + 3];
+
+            for (int corner = 0; corner < VERTICES_PER_QUAD; corner++)
+            {
+                quads[quadIndex] = x;
+                quads[quadIndex + 1] = y;
+                quads[quadIndex + 2] = z;
+                quads[quadIndex + 3] = sprite + corner * 2.0f;
+                quadIndex += propertyCount;
+            }
+        }
+    }
+
+    // Two triangles per quad over corners 0 and 1 along the bottom and 2 and 3 along the top
+    public static void fillIndices(short[] indices, int quadCount)
+    {
+        for (int quad = 0; quad < quadCount; quad++)
+        {
+            int index = quad * INDICES_PER_QUAD;
+            int vertex = quad * VERTICES_PER_QUAD;
+
+            indices[index] = (short) vertex;
+            indices[index + 1] = (short) (vertex + 1);
+            indices[index + 2] = (short) (vertex + 2);
+            indices[index + 3] = (short) (vertex + 2);
+            indices[index + 4] = (short) (vertex + 1);
+            indices[index + 5] = (short) (vertex + 3);
+        }
+    }
+}
@@ -0,0 +1,786 @@
+package com.android.phasebeam;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+// Forwards to another GLApi but drops calls that would set state to what it already is: the program,
+// buffer, texture and framebuffer bindings, enabled attributes and capabilities, the viewport and
+// uniform values per program. A new context needs reset(), GL calls made behind its back invalidate()
+public class StateCacheGL implements GLApi
+{
+    private static final int UNKNOWN = -1;
+
+    // GLES20 values, core can't see android.opengl
+    private static final int GL_ARRAY_BUFFER = 0x8892;
+    private static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    private static final int GL_TEXTURE_2D = 0x0DE1;
+    private static final int GL_TEXTURE0 = 0x84C0;
+
+    private static final int MAX_TEXTURE_UNITS = 8;
+    private static final int MAX_ATTRIBUTES = 32;
+    private static final int MAX_CAPABILITIES = 4;
+
+    // Programs and locations beyond these are simply not cached
+    private static final int MAX_PROGRAMS = 8;
+    private static final int MAX_UNIFORM_LOCATIONS = 32;
+    private static final int UNIFORM_SLOT_SIZE = 16;
+
+    private final GLApi gl;
+
+    //region Bindings
+        private int program;
+        private int arrayBuffer;
+        private int elementArrayBuffer;
+        private int framebuffer;
+        private int activeTexture;
+        private final int[] textures2D = new int[MAX_TEXTURE_UNITS];
+    //endregion
+
+    //region Fixed function state
+        // Only changed through this class, a fresh context starts with all of them off
+        private int enabledAttributes;
+        private final int[] capabilities = new int[MAX_CAPABILITIES];
+        private final int[] capabilityStates = new int[MAX_CAPABILITIES];
+        private final int[] viewport = new int[4];
+        private boolean viewportKnown;
+    //endregion
+
+    //region Uniforms, one slot of 16 floats per location and program, compared bit for bit
+        private final int[] uniformPrograms = new int[MAX_PROGRAMS];
+        private final float[][] uniformValues = new float[MAX_PROGRAMS][MAX_UNIFORM_LOCATIONS * UNIFORM_SLOT_SIZE];
+        private final int[][] uniformSizes = new int[MAX_PROGRAMS][MAX_UNIFORM_LOCATIONS];
+        private int uniformSlot = UNKNOWN;
+        private int nextEvictedSlot;
+    //endregion
+
+    private long skippedCalls;
+
+    public StateCacheGL(GLApi gl)
+    {
+        this.gl = gl;
+        reset();
+    }
+
+    // Call whenever a new context was made current, its state is the GL default rather than unknown
+    public void reset()
+    {
+        enabledAttributes = 0;
+        invalidate();
+    }
+
+    // Forgets bindings, capabilities and uniforms after other code issued GL calls directly
+    public void invalidate()
+    {
+        program = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        elementArrayBuffer = UNKNOWN;
+        framebuffer = UNKNOWN;
+        activeTexture = UNKNOWN;
+
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++)
+        {
+            textures2D[i] = UNKNOWN;
+        }
+
+        for (int i = 0; i < MAX_CAPABILITIES; i++)
+        {
+            capabilities[i] = UNKNOWN;
+        }
+
+        viewportKnown = false;
+
+        for (int i = 0; i < MAX_PROGRAMS; i++)
+        {
+            uniformPrograms[i] = UNKNOWN;
+        }
+
+        uniformSlot = UNKNOWN;
+    }
+
+    // Calls dropped since creation, the driver work saved
+    public long getSkippedCalls()
+    {
+        return skippedCalls;
+    }
+
+    // Enables exactly the attributes in the mask and disables every other one that may be on,
+    // so each draw states what it needs instead of pairing enables with disables
+    public void useVertexAttributes(int mask)
+    {
+        int changed = mask | enabledAttributes;
+
+        for (int index = 0; index < MAX_ATTRIBUTES && changed != 0; index++)
+        {
+            int bit = 1 << index;
+
+            if ((mask & bit) != 0)
+            {
+                glEnableVertexAttribArray(index);
+            }
+            else if ((enabledAttributes & bit) != 0)
+            {
+                glDisableVertexAttribArray(index);
+            }
+
+            changed &= ~bit;
+        }
+    }
+
+    // Bit for an attribute location in a useVertexAttributes mask, nothing for missing attributes
+    public static int attributeBit(int location)
+    {
+        return location >= 0 && location < MAX_ATTRIBUTES ? 1 << location : 0;
+    }
+
+    //region Cache helpers
+        private boolean skip()
+        {
+            skippedCalls++;
+            return true;
+        }
+
+        private int capabilityIndex(int cap)
+        {
+            for (int i = 0; i < MAX_CAPABILITIES; i++)
+            {
+                if (capabilities[i] == cap)
+                {
+                    return i;
+                }
+            }
+
+            for (int i = 0; i < MAX_CAPABILITIES; i++)
+            {
+                if (capabilities[i] == UNKNOWN)
+                {
+                    capabilities[i] = cap;
+                    capabilityStates[i] = UNKNOWN;
+                    return i;
+                }
+            }
+
+            return UNKNOWN;
+        }
+
+        private boolean setCapability(int cap, int state)
+        {
+            int index = capabilityIndex(cap);
+
+            if (index == UNKNOWN)
+            {
+                return false;
+            }
+
+            if (capabilityStates[index] == state)
+            {
+                return skip();
+            }
+
+            capabilityStates[index] = state;
+            return false;
+        }
+
+        private void forgetUniforms(int program)
+        {
+            for (int i = 0; i < MAX_PROGRAMS; i++)
+            {
+                if (uniformPrograms[i] == program)
+                {
+                    uniformPrograms[i] = UNKNOWN;
+
+                    if (uniformSlot == i)
+                    {
+                        uniformSlot = UNKNOWN;
+                    }
+                }
+            }
+        }
+
+        private void selectUniformSlot(int program)
+        {
+            for (int i = 0; i < MAX_PROGRAMS; i++)
+            {
+                if (uniformPrograms[i] == program)
+                {
+                    uniformSlot = i;
+                    return;
+                }
+            }
+
+            // A program seen for the first time starts with nothing known
+            int slot = nextEvictedSlot;
+            nextEvictedSlot = (nextEvictedSlot + 1) % MAX_PROGRAMS;
+
+            uniformPrograms[slot] = program;
+            Arrays.fill(uniformSizes[slot], 0);
+            uniformSlot = slot;
+        }
+
+        // Stores the values when they differ and returns true when the call can be dropped
+        private boolean sameUniform(int location, float x, float y, int size)
+        {
+            if (uniformSlot == UNKNOWN || location < 0 || location >= MAX_UNIFORM_LOCATIONS)
+            {
+                return false;
+            }
+
+            float[] values = uniformValues[uniformSlot];
+            int[] sizes = uniformSizes[uniformSlot];
+            int base = location * UNIFORM_SLOT_SIZE;
+
+            if (sizes[location] == size
+                    && Float.floatToRawIntBits(values[base]) == Float.floatToRawIntBits(x)
+                    && (size < 2 || Float.floatToRawIntBits(values[base + 1]) == Float.floatToRawIntBits(y)))
+            {
+                return skip();
+            }
+
+            values[base] = x;
+            values[base + 1] = y;
+            sizes[location] = size;
+
+            return false;
+        }
+
+        private boolean sameUniformMatrix(int location, float[] value, int offset)
+        {
+            if (uniformSlot == UNKNOWN || location < 0 || location >= MAX_UNIFORM_LOCATIONS)
+            {
+                return false;
+            }
+
+            float[] values = uniformValues[uniformSlot];
+            int[] sizes = uniformSizes[uniformSlot];
+            int base = location * UNIFORM_SLOT_SIZE;
+            boolean same = sizes[location] == UNIFORM_SLOT_SIZE;
+
+            for (int i = 0; i < UNIFORM_SLOT_SIZE && same; i++)
+            {
+                same = Float.floatToRawIntBits(values[base + i]) == Float.floatToRawIntBits(value[offset + i]);
+            }
+
+            if (same)
+            {
+                return skip();
+            }
+
+            System.arraycopy(value, offset, values, base, UNIFORM_SLOT_SIZE);
+            sizes[location] = UNIFORM_SLOT_SIZE;
+
+            return false;
+        }
+
+        private int textureUnit()
+        {
+            int unit = activeTexture - GL_TEXTURE0;
+            return activeTexture != UNKNOWN && unit >= 0 && unit < MAX_TEXTURE_UNITS ? unit : UNKNOWN;
+        }
+    //endregion
+
+    //region State
+        @Override
+        public void glEnable(int cap)
+        {
+            if (!setCapability(cap, 1))
+            {
+                gl.glEnable(cap);
+            }
+        }
+
+        @Override
+        public void glDisable(int cap)
+        {
+            if (!setCapability(cap, 0))
+            {
+                gl.glDisable(cap);
+            }
+        }
+
+        @Override
+        public void glBlendFunc(int sfactor, int dfactor)
+        {
+            gl.glBlendFunc(sfactor, dfactor);
+        }
+
+        @Override
+        public void glClearColor(float red, float green, float blue, float alpha)
+        {
+            gl.glClearColor(red, green, blue, alpha);
+        }
+
+        @Override
+        public void glClear(int mask)
+        {
+            gl.glClear(mask);
+        }
+
+        @Override
+        public void glViewport(int x, int y, int width, int height)
+        {
+            if (viewportKnown && viewport[0] == x && viewport[1] == y && viewport[2] == width && viewport[3] == height)
+            {
+                skip();
+                return;
+            }
+
+            viewport[0] = x;
+            viewport[1] = y;
+            viewport[2] = width;
+            viewport[3] = height;
+            viewportKnown = true;
+            gl.glViewport(x, y, width, height);
+        }
+    //endregion
+
+    //region Programs and shaders
+        @Override
+        public int glCreateShader(int type)
+        {
+            return gl.glCreateShader(type);
+        }
+
+        @Override
+        public void glShaderSource(int shader, String source)
+        {
+            gl.glShaderSource(shader, source);
+        }
+
+        @Override
+        public void glCompileShader(int shader)
+        {
+            gl.glCompileShader(shader);
+        }
+
+        @Override
+        public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+        {
+            gl.glGetShaderiv(shader, pname, params, offset);
+        }
+
+        @Override
+        public String glGetShaderInfoLog(int shader)
+        {
+            return gl.glGetShaderInfoLog(shader);
+        }
+
+        @Override
+        public void glDeleteShader(int shader)
+        {
+            gl.glDeleteShader(shader);
+        }
+
+        @Override
+        public int glCreateProgram()
+        {
+            return gl.glCreateProgram();
+        }
+
+        @Override
+        public void glAttachShader(int program, int shader)
+        {
+            gl.glAttachShader(program, shader);
+        }
+
+        // Linking resets every uniform to zero
+        @Override
+        public void glLinkProgram(int program)
+        {
+            forgetUniforms(program);
+            gl.glLinkProgram(program);
+        }
+
+        @Override
+        public void glGetProgramiv(int program, int pname, int[] params, int offset)
+        {
+            gl.glGetProgramiv(program, pname, params, offset);
+        }
+
+        @Override
+        public String glGetProgramInfoLog(int program)
+        {
+            return gl.glGetProgramInfoLog(program);
+        }
+
+        // The name may come back for a different program, so nothing about it can be kept
+        @Override
+        public void glDeleteProgram(int program)
+        {
+            forgetUniforms(program);
+
+            if (this.program == program)
+            {
+                this.program = UNKNOWN;
+            }
+
+            gl.glDeleteProgram(program);
+        }
+
+        @Override
+        public void glUseProgram(int program)
+        {
+            if (this.program == program)
+            {
+                skip();
+                return;
+            }
+
+            this.program = program;
+            selectUniformSlot(program);
+            gl.glUseProgram(program);
+        }
+
+        @Override
+        public int glGetAttribLocation(int program, String name)
+        {
+            return gl.glGetAttribLocation(program, name);
+        }
+
+        @Override
+        public int glGetUniformLocation(int program, String name)
+        {
+            return gl.glGetUniformLocation(program, name);
+        }
+    //endregion
+
+    //region Uniforms
+        @Override
+        public void glUniform1f(int location, float x)
+        {
+            if (!sameUniform(location, x, 0.0f, 1))
+            {
+                gl.glUniform1f(location, x);
+            }
+        }
+
+        @Override
+        public void glUniform2f(int location, float x, float y)
+        {
+            if (!sameUniform(location, x, y, 2))
+            {
+                gl.glUniform2f(location, x, y);
+            }
+        }
+
+        // Stored by bits in its own size class so it never matches a float with the same bits
+        @Override
+        public void glUniform1i(int location, int x)
+        {
+            if (!sameUniform(location, Float.intBitsToFloat(x), 0.0f, 3))
+            {
+                gl.glUniform1i(location, x);
+            }
+        }
+
+        // Only single matrices are cached
+        @Override
+        public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+        {
+            if (count == 1 && !transpose)
+            {
+                if (sameUniformMatrix(location, value, offset))
+                {
+                    return;
+                }
+            }
+            else if (uniformSlot != UNKNOWN)
+            {
+                // Arrays fill consecutive locations, none of them can be trusted afterwards
+                for (int i = Math.max(0, location); i < Math.min(MAX_UNIFORM_LOCATIONS, location + count); i++)
+                {
+                    uniformSizes[uniformSlot][i] = 0;
+                }
+            }
+
+            gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+        }
+    //endregion
+
+    //region Buffers and vertex arrays
+        @Override
+        public void glGenBuffers(int n, int[] buffers, int offset)
+        {
+            gl.glGenBuffers(n, buffers, offset);
+        }
+
+        // Deleting a bound buffer binds 0 in its place
+        @Override
+        public void glDeleteBuffers(int n, int[] buffers, int offset)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                if (arrayBuffer == buffers[offset + i])
+                {
+                    arrayBuffer = 0;
+                }
+
+                if (elementArrayBuffer == buffers[offset + i])
+                {
+                    elementArrayBuffer = 0;
+                }
+            }
+
+            gl.glDeleteBuffers(n, buffers, offset);
+        }
+
+        @Override
+        public void glBindBuffer(int target, int buffer)
+        {
+            if (target == GL_ARRAY_BUFFER)
+            {
+                if (arrayBuffer == buffer)
+                {
+                    skip();
+                    return;
+                }
+
+                arrayBuffer = buffer;
+            }
+            else if (target == GL_ELEMENT_ARRAY_BUFFER)
+            {
+                if (elementArrayBuffer == buffer)
+                {
+                    skip();
+                    return;
+                }
+
+                elementArrayBuffer = buffer;
+            }
+
+            gl.glBindBuffer(target, buffer);
+        }
+
+        @Override
+        public void glBufferData(int target, int size, Buffer data, int usage)
+        {
+            gl.glBufferData(target, size, data, usage);
+        }
+
+        @Override
+        public void glBufferSubData(int target, int offset, int size, Buffer data)
+        {
+            gl.glBufferSubData(target, offset, size, data);
+        }
+
+        @Override
+        public void glEnableVertexAttribArray(int index)
+        {
+            int bit = attributeBit(index);
+
+            if ((enabledAttributes & bit) != 0)
+            {
+                skip();
+                return;
+            }
+
+            enabledAttributes |= bit;
+            gl.glEnableVertexAttribArray(index);
+        }
+
+        @Override
+        public void glDisableVertexAttribArray(int index)
+        {
+            int bit = attributeBit(index);
+
+            if (bit == 0 || (enabledAttributes & bit) == 0)
+            {
+                skip();
+                return;
+            }
+
+            enabledAttributes &= ~bit;
+            gl.glDisableVertexAttribArray(index);
+        }
+
+        // Pointers are cheap to set and depend on the bound buffer, so they always go through
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+        {
+            gl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+        }
+
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer pointer)
+        {
+            gl.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+        }
+    //endregion
+
+    //region Textures and framebuffers
+        @Override
+        public void glGenTextures(int n, int[] textures, int offset)
+        {
+            gl.glGenTextures(n, textures, offset);
+        }
+
+        // Deleting a bound texture binds 0 in its place
+        @Override
+        public void glDeleteTextures(int n, int[] textures, int offset)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++)
+                {
+                    if (textures2D[unit] == textures[offset + i])
+                    {
+                        textures2D[unit] = 0;
+                    }
+                }
+            }
+
+            gl.glDeleteTextures(n, textures, offset);
+        }
+
+        @Override
+        public void glActiveTexture(int texture)
+        {
+            if (activeTexture == texture)
+            {
+                skip();
+                return;
+            }
+
+            activeTexture = texture;
+            gl.glActiveTexture(texture);
+        }
+
+        @Override
+        public void glBindTexture(int target, int texture)
+        {
+            int unit = textureUnit();
+
+            if (target == GL_TEXTURE_2D && unit != UNKNOWN)
+            {
+                if (textures2D[unit] == texture)
+                {
+                    skip();
+                    return;
+                }
+
+                textures2D[unit] = texture;
+            }
+
+            gl.glBindTexture(target, texture);
+        }
+
+        @Override
+        public void glTexParameteri(int target, int pname, int param)
+        {
+            gl.glTexParameteri(target, pname, param);
+        }
+
+        @Override
+        public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+        {
+            gl.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+        }
+
+        @Override
+        public void glGenerateMipmap(int target)
+        {
+            gl.glGenerateMipmap(target);
+        }
+
+        @Override
+        public void glGenFramebuffers(int n, int[] framebuffers, int offset)
+        {
+            gl.glGenFramebuffers(n, framebuffers, offset);
+        }
+
+        @Override
+        public void glDeleteFramebuffers(int n, int[] framebuffers, int offset)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                if (framebuffer == framebuffers[offset + i])
+                {
+                    framebuffer = 0;
+                }
+            }
+
+            gl.glDeleteFramebuffers(n, framebuffers, offset);
+        }
+
+        @Override
+        public void glBindFramebuffer(int target, int framebuffer)
+        {
+            if (this.framebuffer == framebuffer)
+            {
+                skip();
+                return;
+            }
+
+            this.framebuffer = framebuffer;
+            gl.glBindFramebuffer(target, framebuffer);
+        }
+
+        @Override
+        public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level)
+        {
+            gl.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+        }
+
+        @Override
+        public int glCheckFramebufferStatus(int target)
+        {
+            return gl.glCheckFramebufferStatus(target);
+        }
+    //endregion
+
+    //region Drawing
+        @Override
+        public void glDrawArrays(int mode, int first, int count)
+        {
+            gl.glDrawArrays(mode, first, count);
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, int offset)
+        {
+            gl.glDrawElements(mode, count, type, offset);
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, Buffer indices)
+        {
+            gl.glDrawElements(mode, count, type, indices);
+        }
+    //endregion
+
+    //region Queries
+        @Override
+        public String glGetString(int name)
+        {
+            return gl.glGetString(name);
+        }
+
+        @Override
+        public void glGetIntegerv(int pname, int[] params, int offset)
+        {
+            gl.glGetIntegerv(pname, params, offset);
+        }
+
+        @Override
+        public void glGenQueries(int n, int[] ids, int offset)
+        {
+            gl.glGenQueries(n, ids, offset);
+        }
+
+        @Override
+        public void glBeginQuery(int target, int id)
+        {
+            gl.glBeginQuery(target, id);
+        }
+
+        @Override
+        public void glEndQuery(int target)
+        {
+            gl.glEndQuery(target);
+        }
+
+        @Override
+        public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset)
+        {
+            gl.glGetQueryObjectuiv(id, pname, params, offset);
+        }
+    //endregion
+}
@@ -0,0 +1,120 @@
+package com.android.phasebeam;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+public class StreamingVertexBuffer
+{
+    // Number of VBOs cycled through so we never write into one the GPU may still be reading
+    private static final int RING_SIZE = 3;
+
+    // GLES20 values, core can't see android.opengl
+    private static final int GL_ARRAY_BUFFER = 0x8892;
+    private static final int GL_STREAM_DRAW = 0x88E0;
+
+    //region Buffer data
+        private final GLApi gl;
+        private final GLResourceManager resources;
+        private final String name;
+        private final boolean useVbo;
+        private final int[] vboIds = new int[RING_SIZE];
+        private final int[] vboCapacities = new int[RING_SIZE];
+        private int currentVbo = -1;
+
+        private FloatBuffer clientBuffer;
+        private int clientCapacity;
+    //endregion
+
+    // The VBOs and the client copy are reported to resources under name. Without VBOs draws read the client copy
+    public StreamingVertexBuffer(GLApi gl, GLResourceManager resources, String name, int initialFloatCount, boolean useVbo)
+    {
+        this.gl = gl;
+        this.resources = resources;
+        this.name = name;
+        this.useVbo = useVbo;
+        ensureClientCapacity(initialFloatCount);
+    }
+
+    public static FloatBuffer allocateFloatBuffer(int floatCount)
+    {
+        ByteBuffer nativeByteBuffer = ByteBuffer.allocateDirect(floatCount * 4);
+        nativeByteBuffer.order(ByteOrder.nativeOrder());
+
+        return nativeByteBuffer.asFloatBuffer();
+    }
+
+    // Must be called on the GL thread whenever a new context has been created
+    public void create()
+    {
+        if (useVbo)
+        {
+            gl.glGenBuffers(RING_SIZE, vboIds, 0);
+        }
+
+        for (int i = 0; i < RING_SIZE; i++)
+        {
+            vboCapacities[i] = 0;
+
+            if (useVbo)
+            {
+                resources.track(GLResourceManager.BUFFER, vboIds[i], 0);
+            }
+        }
+
+        currentVbo = -1;
+    }
+
+    // Fills the native buffer and, when VBOs are available, the next VBO of the ring (left bound)
+    public void upload(float[] data, int floatCount)
+    {
+        ensureClientCapacity(floatCount);
+
+        clientBuffer.position(0);
+        clientBuffer.put(data, 0, floatCount).position(0);
+
+        if (useVbo)
+        {
+            currentVbo = (currentVbo + 1) % RING_SIZE;
+
+            int byteCount = floatCount * 4;
+
+            gl.glBindBuffer(GL_ARRAY_BUFFER, vboIds[currentVbo]);
+
+            if (vboCapacities[currentVbo] < byteCount)
+            {
+                gl.glBufferData(GL_ARRAY_BUFFER, byteCount, clientBuffer, GL_STREAM_DRAW);
+                vboCapacities[currentVbo] = byteCount;
+                resources.track(GLResourceManager.BUFFER, vboIds[currentVbo], byteCount);
+            }
+            else
+            {
+                gl.glBufferSubData(GL_ARRAY_BUFFER, 0, byteCount, clientBuffer);
+            }
+        }
+    }
+
+    public FloatBuffer getClientBuffer()
+    {
+        clientBuffer.position(0);
+        return clientBuffer;
+    }
+
+    // Only while nothing draws from the client copy, the next upload allocates it again
+    public void trimClientBuffer()
+    {
+        clientBuffer = null;
+        clientCapacity = 0;
+        resources.trackCpu(name, 0);
+    }
+
+    private void ensureClientCapacity(int floatCount)
+    {
+        if (clientBuffer == null || clientCapacity < floatCount)
+        {
+            clientBuffer = allocateFloatBuffer(floatCount);
+            clientCapacity = floatCount;
+            resources.trackCpu(name, floatCount * 4L);
+        }
+    }
+}
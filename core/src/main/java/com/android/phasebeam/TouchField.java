@@ -0,0 +1,222 @@
+package com.android.phasebeam;
+
+import java.util.Arrays;
+
+// Pushes particles away from touch points through a coarse grid of precomputed forces
+// Building the grid costs a few cells per finger, after that every particle is a single lookup
+public class TouchField
+{
+    // Covers the particle spawn area with some margin, particles outside simply feel nothing
+    private static final float GRID_EXTENT = 1.5f;
+    private static final int GRID_SIZE = 32;
+    private static final float CELL_SIZE = GRID_EXTENT * 2.0f / GRID_SIZE;
+
+    // Radius and push per tick at the touch point, falling off quadratically towards the edge
+    private static final float RADIUS = 0.4f;
+    private static final float PUSH_PER_TICK = 0.035f;
+
+    // Lifted fingers fade out instead of letting go of the particles abruptly
+    private static final long RELEASE_NANOS = 250000000L;
+
+    // A finger that stops reporting moves for this long is assumed lost, e.g. to a release that never came
+    private static final long STALE_NANOS = 1000000000L;
+
+    private static final int MAX_POINTERS = 10;
+
+    //region Pointer state, GL thread only
+        private final float[] pointerX = new float[MAX_POINTERS];
+        private final float[] pointerY = new float[MAX_POINTERS];
+        private final boolean[] pointerDown = new boolean[MAX_POINTERS];
+        private final long[] pointerReleaseNanos = new long[MAX_POINTERS];
+        private final boolean[] pointerFading = new boolean[MAX_POINTERS];
+        private final long[] pointerLastNanos = new long[MAX_POINTERS];
+        private long frameTimeNanos;
+    //endregion
+
+    //region Force grid
+        private final float[] forces = new float[GRID_SIZE * GRID_SIZE * 2];
+        private boolean active;
+        private boolean gridDirty;
+    //endregion
+
+    //region Surface mapping
+        private float pixelToParticleX;
+        private float pixelToParticleY;
+        private float centerX;
+        private float centerY;
+    //endregion
+
+    // Mirrors the renderer's frustum, which squeezes the longer axis into the shorter one's range
+    public void setViewport(int width, int height)
+    {
+        float aspectRatio = width > height ? (float) height / width : (float) width / height;
+
+        centerX = width / 2.0f;
+        centerY = height / 2.0f;
+        pixelToParticleX = 2.0f / width * (width > height ? aspectRatio : 1.0f);
+        pixelToParticleY = -2.0f / height * (width > height ? 1.0f : aspectRatio);
+    }
+
+    // Called while draining the TouchQueue, before update
+    public void onTouch(int action, int pointerId, float x, float y)
+    {
+        if (action == TouchQueue.ACTION_CANCEL_ALL)
+        {
+            cancelAll();
+            return;
+        }
+
+        if (pointerId < 0 || pointerId >= MAX_POINTERS)
+        {
+            return;
+        }
+
+        pointerX[pointerId] = (x - centerX) * pixelToParticleX;
+        pointerY[pointerId] = (y - centerY) * pixelToParticleY;
+
+        if (action == TouchQueue.ACTION_UP)
+        {
+            releasePointer(pointerId);
+        }
+        else
+        {
+            pointerDown[pointerId] = true;
+            pointerFading[pointerId] = false;
+            pointerLastNanos[pointerId] = frameTimeNanos;
+        }
+    }
+
+    // Fades a finger out from where it was last seen
+    public void releasePointer(int pointerId)
+    {
+        if (pointerId >= 0 && pointerId < MAX_POINTERS && pointerDown[pointerId])
+        {
+            pointerDown[pointerId] = false;
+            pointerFading[pointerId] = true;
+            pointerReleaseNanos[pointerId] = frameTimeNanos;
+        }
+    }
+
+    // Drops every finger at once, nobody is looking at the fade when the wallpaper is hidden
+    public void cancelAll()
+    {
+        Arrays.fill(pointerDown, false);
+        Arrays.fill(pointerFading, false);
+    }
+
+    public void setFrameTime(long frameTimeNanos)
+    {
+        this.frameTimeNanos = frameTimeNanos;
+    }
+
+    // Rebuilds the grid for this frame, returns false when no finger has any influence
+    public boolean update()
+    {
+        if (gridDirty)
+        {
+            Arrays.fill(forces, 0.0f);
+            gridDirty = false;
+        }
+
+        active = false;
+
+        for (int i = 0; i < MAX_POINTERS; i++)
+        {
+            float strength;
+
+            if (pointerDown[i] && frameTimeNanos - pointerLastNanos[i] >= STALE_NANOS)
+            {
+                releasePointer(i);
+            }
+
+            if (pointerDown[i])
+            {
+                strength = 1.0f;
+            }
+            else if (pointerFading[i])
+            {
+                long releasedNanos = frameTimeNanos - pointerReleaseNanos[i];
+
+                if (releasedNanos >= RELEASE_NANOS)
+                {
+                    pointerFading[i] = false;
+                    continue;
+                }
+
+                strength = 1.0f - (float) releasedNanos / RELEASE_NANOS;
+            }
+            else
+            {
+                continue;
+            }
+
+            splat(pointerX[i], pointerY[i], strength * PUSH_PER_TICK);
+            active = true;
+        }
+
+        gridDirty = active;
+
+        return active;
+    }
+
+    public boolean isActive()
+    {
+        return active;
+    }
+
+    // Index of the cell under a particle's on-screen position, or -1 outside the grid
+    public int cellAt(float x, float y)
+    {
+        int column = (int) Math.floor((x + GRID_EXTENT) / CELL_SIZE);
+        int row = (int) Math.floor((y + GRID_EXTENT) / CELL_SIZE);
+
+        if (column < 0 || column >= GRID_SIZE || row < 0 || row >= GRID_SIZE)
+        {
+            return -1;
+        }
+
+        return (row * GRID_SIZE + column) * 2;
+    }
+
+    public float getForceX(int cell)
+    {
+        return forces[cell];
+    }
+
+    public float getForceY(int cell)
+    {
+        return forces[cell + 1];
+    }
+
+    // Accumulates one finger's push into the cells within its radius, judged at the cell centers
+    private void splat(float touchX, float touchY, float push)
+    {
+        int firstColumn = Math.max(0, (int) Math.floor((touchX - RADIUS + GRID_EXTENT) / CELL_SIZE));
+        int lastColumn = Math.min(GRID_SIZE - 1, (int) Math.floor((touchX + RADIUS + GRID_EXTENT) / CELL_SIZE));
+        int firstRow = Math.max(0, (int) Math.floor((touchY - RADIUS + GRID_EXTENT) / CELL_SIZE));
+        int lastRow = Math.min(GRID_SIZE - 1, (int) Math.floor((touchY + RADIUS + GRID_EXTENT) / CELL_SIZE));
+
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            float dy = (row + 0.5f) * CELL_SIZE - GRID_EXTENT - touchY;
+
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                float dx = (column + 0.5f) * CELL_SIZE - GRID_EXTENT - touchX;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy);
+
+                if (distance >= RADIUS || distance == 0.0f)
+                {
+                    continue;
+                }
+
+                float falloff = 1.0f - distance / RADIUS;
+                float scale = push * falloff * falloff / distance;
+                int cell = (row * GRID_SIZE + column) * 2;
+
+                forces[cell] += dx * scale;
+                forces[cell + 1] += dy * scale;
+            }
+        }
+    }
+}
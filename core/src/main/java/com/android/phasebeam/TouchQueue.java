@@ -0,0 +1,144 @@
+package com.android.phasebeam;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Ring of primitive touch samples from the UI thread to the GL thread, one producer and one consumer
+// Nothing is allocated or locked per sample. A full ring drops new moves, a newer one follows anyway, but makes
+// room for anything else by evicting the oldest move, so a finger is never left pressed by a lost release
+public class TouchQueue
+{
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_MOVE = 1;
+    public static final int ACTION_UP = 2;
+
+    // Lets go of every pointer at once, e.g. when the wallpaper is hidden in the middle of a gesture
+    public static final int ACTION_CANCEL_ALL = 3;
+
+    // A frame rarely sees more than a few move batches, this covers a long stall at ten fingers
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+
+    // Releases that found no move to evict are kept as one bit per pointer id
+    private static final int MAX_RELEASED_POINTER = 31;
+    private static final int ALL_POINTERS = -1;
+
+    //region Sample storage, a slot belongs to the producer until writeCount moves past it
+        private final int[] actions = new int[CAPACITY];
+        private final int[] pointerIds = new int[CAPACITY];
+        private final float[] xs = new float[CAPACITY];
+        private final float[] ys = new float[CAPACITY];
+        private volatile int writeCount;
+
+        // Advanced by the consumer per sample, and by the producer when it evicts the oldest one
+        private final AtomicInteger readCount = new AtomicInteger();
+        private final AtomicInteger releasedPointers = new AtomicInteger();
+    //endregion
+
+    // Producer only, x and y are surface pixels. Returns false when the sample was dropped or only kept as a release
+    public boolean offer(int action, int pointerId, float x, float y)
+    {
+        int write = writeCount;
+
+        while (true)
+        {
+            int read = readCount.get();
+
+            if (write - read < CAPACITY)
+            {
+                break;
+            }
+
+            if (action == ACTION_MOVE)
+            {
+                return false;
+            }
+
+            // The producer wrote every slot in the ring, so reading the oldest one is safe
+            if (actions[read & MASK] != ACTION_MOVE)
+            {
+                // A dropped down is implied by the pointer's next move, a release must still arrive
+                if (action == ACTION_CANCEL_ALL)
+                {
+                    releasedPointers.set(ALL_POINTERS);
+                }
+                else if (action == ACTION_UP && pointerId >= 0 && pointerId <= MAX_RELEASED_POINTER)
+                {
+                    markReleased(pointerId);
+                }
+
+                return false;
+            }
+
+            // Takes the oldest slot back from the consumer, which skips the sample when its own claim fails
+            readCount.compareAndSet(read, read + 1);
+        }
+
+        int slot = write & MASK;
+        actions[slot] = action;
+        pointerIds[slot] = pointerId;
+        xs[slot] = x;
+        ys[slot] = y;
+
+        // The volatile write publishes the slot contents to the consumer
+        writeCount = write + 1;
+
+        return true;
+    }
+
+    // Consumer only, hands every queued sample to the field in order and returns how many there were
+    public int drainTo(TouchField field)
+    {
+        int write = writeCount;
+        int read = readCount.get();
+        int drained = 0;
+
+        while (read != write)
+        {
+            int slot = read & MASK;
+            int action = actions[slot];
+            int pointerId = pointerIds[slot];
+            float x = xs[slot];
+            float y = ys[slot];
+
+            // Only a claimed sample counts, an evicted one may already have been overwritten while it was read
+            if (readCount.compareAndSet(read, read + 1))
+            {
+                field.onTouch(action, pointerId, x, y);
+                drained++;
+            }
+
+            read = readCount.get();
+        }
+
+        // Releases that didn't fit were offered after everything in the ring
+        int released = releasedPointers.getAndSet(0);
+
+        if (released == ALL_POINTERS)
+        {
+            field.onTouch(ACTION_CANCEL_ALL, 0, 0.0f, 0.0f);
+        }
+        else
+        {
+            for (int pointerId = 0; released != 0; pointerId++, released >>>= 1)
+            {
+                if ((released & 1) != 0)
+                {
+                    field.releasePointer(pointerId);
+                }
+            }
+        }
+
+        return drained;
+    }
+
+    private void markReleased(int pointerId)
+    {
+        int released;
+
+        do
+        {
+            released = releasedPointers.get();
+        }
+        while (!releasedPointers.compareAndSet(released, released | (1 << pointerId)));
+    }
+}
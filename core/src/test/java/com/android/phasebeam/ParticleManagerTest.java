@@ -0,0 +1,118 @@
+package com.android.phasebeam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+// The frame path has to run without touching the heap, so the GC never pauses a frame
+public class ParticleManagerTest
+{
+    // Enough frames to load every class and get the loops compiled before measuring
+    private static final int WARMUP_FRAMES = 2000;
+    private static final int MEASURED_FRAMES = 5000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void serialUpdateAllocatesNothing() throws IOException
+    {
+        ParticleManager particleManager = new ParticleManager(TestScene.load());
+
+        assertTrue(particleManager.getActiveParticleCount() < ParticleManager.PARALLEL_THRESHOLD);
+        assertEquals(0, allocatedBytes(particleManager));
+    }
+
+    @Test
+    public void parallelUpdateAllocatesNothing() throws IOException
+    {
+        ParticleManager particleManager = new ParticleManager(TestScene.load(), ParticleManager.PARALLEL_THRESHOLD * 2);
+
+        try
+        {
+            assertEquals(0, allocatedBytes(particleManager));
+        }
+        finally
+        {
+            particleManager.release();
+        }
+    }
+
+    // Counts this thread and the update workers, the workers are only started by the first parallel frame
+    private static long allocatedBytes(ParticleManager particleManager)
+    {
+        long frameNanos = runFrames(particleManager, 0L, WARMUP_FRAMES);
+        long[] workerIds = workerThreadIds();
+
+        // Reading other threads allocates the result array, so that happens outside this thread's window
+        long workersBefore = sum(THREADS.getThreadAllocatedBytes(workerIds));
+        long callerBefore = THREADS.getCurrentThreadAllocatedBytes();
+
+        runFrames(particleManager, frameNanos, MEASURED_FRAMES);
+
+        long callerBytes = THREADS.getCurrentThreadAllocatedBytes() - callerBefore;
+        long workerBytes = sum(THREADS.getThreadAllocatedBytes(workerIds)) - workersBefore;
+
+        return callerBytes + workerBytes;
+    }
+
+    // What PhaseBeamRenderer does per frame for CPU animation, with a scroll now and then so the glide runs too
+    private static long runFrames(ParticleManager particleManager, long frameNanos, int frames)
+    {
+        for (int frame = 0; frame < frames; frame++)
+        {
+            frameNanos += ParticleManager.STEP_NANOS;
+
+            if (frame % 50 == 0)
+            {
+                particleManager.setXOffset((frame / 50) % 5 * 0.25f, frameNanos);
+            }
+
+            particleManager.tickXOffset(frameNanos);
+            particleManager.tickTouches(frameNanos);
+            particleManager.updateParticles(1 + frame % 2);
+            particleManager.interpolate(0.5f);
+        }
+
+        return frameNanos;
+    }
+
+    private static long[] workerThreadIds()
+    {
+        ArrayList<Long> ids = new ArrayList<Long>();
+
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (thread.getName().startsWith("PhaseBeamParticles-"))
+            {
+                ids.add(thread.getId());
+            }
+        }
+
+        long[] workerIds = new long[ids.size()];
+
+        for (int i = 0; i < workerIds.length; i++)
+        {
+            workerIds[i] = ids.get(i);
+        }
+
+        return workerIds;
+    }
+
+    private static long sum(long[] values)
+    {
+        long sum = 0;
+
+        for (long value : values)
+        {
+            sum += Math.max(0, value);
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,227 @@
+package com.android.phasebeam;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+// Steady frames have to stay within a fixed GL budget: the state cache keeps redundant binds and uniforms from
+// reaching the driver, nothing reads back from it and only the particles are uploaded
+public class SceneRendererTest
+{
+    private static final int WARMUP_FRAMES = 10;
+    private static final int MEASURED_FRAMES = 300;
+    private static final long FRAME_NANOS = 1000000000L / 60;
+
+    private static final int SURFACE_WIDTH = 1080;
+    private static final int SURFACE_HEIGHT = 1920;
+
+    // Background and particles each switch program, attribute arrays and pointers, the GPU animation has a third
+    // attribute. Uniforms only change with the scroll offset and the animation time
+    private static final int MAX_CALLS = 24;
+    private static final int MAX_STATE_CHANGES = 15;
+    private static final int MAX_BUFFER_BINDS = 4;
+    private static final int MAX_UNIFORM_WRITES = 2;
+
+    // The upscale adds its own program, attribute array, texture and framebuffer
+    private static final int MAX_UPSCALE_CALLS = 12;
+    private static final int MAX_UPSCALE_STATE_CHANGES = 6;
+
+    private RecordingGL recording;
+    private CountingGL counting;
+    private ParticleManager particleManager;
+    private SceneRenderer sceneRenderer;
+    private int particleProgramId;
+    private int offscreenTextureId;
+
+    @After
+    public void tearDown()
+    {
+        particleManager.release();
+    }
+
+    @Test
+    public void pointFramesStayWithinBudget() throws IOException
+    {
+        setUp(true, SceneRenderer.ANIMATION_CPU, SceneRenderer.SPRITE_POINTS);
+
+        GLCounters frame = runFrames(false);
+
+        assertEquals(2, frame.drawCalls);
+        assertEquals(particleManager.getActiveFloatCount() * 4L, frame.bytesUploaded);
+    }
+
+    @Test
+    public void quadFramesStayWithinBudget() throws IOException
+    {
+        setUp(true, SceneRenderer.ANIMATION_CPU, SceneRenderer.SPRITE_QUADS);
+
+        GLCounters frame = runFrames(false);
+
+        // The index buffer is filled once, after that only the expanded quads go up
+        int quadBatches = (particleManager.getActiveVertexCount() + SpriteQuads.MAX_QUADS_PER_BATCH - 1) / SpriteQuads.MAX_QUADS_PER_BATCH;
+        assertEquals(1 + quadBatches, frame.drawCalls);
+        assertEquals(particleManager.getActiveFloatCount() * 4L * SpriteQuads.VERTICES_PER_QUAD, frame.bytesUploaded);
+    }
+
+    @Test
+    public void gpuAnimatedFramesUploadNothing() throws IOException
+    {
+        setUp(true, SceneRenderer.ANIMATION_GPU, SceneRenderer.SPRITE_POINTS);
+
+        GLCounters frame = runFrames(false);
+
+        assertEquals(2, frame.drawCalls);
+        assertEquals(0, frame.bytesUploaded);
+    }
+
+    @Test
+    public void gpuAnimationTimeStartsOver() throws IOException
+    {
+        setUp(true, SceneRenderer.ANIMATION_GPU, SceneRenderer.SPRITE_POINTS);
+
+        // RecordingGL hands out the same location for the same program and name
+        int timeLocation = recording.glGetUniformLocation(particleProgramId, "uTime");
+        int restarts = 0;
+        float lastTicks = 0.0f;
+
+        // Well over an hour in one second frames
+        for (int frame = 1; frame <= 5000; frame++)
+        {
+            recording.clear();
+            sceneRenderer.drawScene(frame * 1000000000L, 1, 0.5f);
+
+            float ticks = lastUniform(timeLocation);
+
+            assertTrue("frame " + frame + ": " + ticks + " ticks", ticks >= 0.0f && ticks < 4096.0f);
+
+            if (ticks < lastTicks)
+            {
+                restarts++;
+                assertEquals("seeds uploaded again", 1, recording.count("glBufferData"));
+            }
+
+            lastTicks = ticks;
+        }
+
+        assertTrue(restarts + " restarts", restarts > 10);
+    }
+
+    @Test
+    public void clientMemoryFramesUploadNothing() throws IOException
+    {
+        setUp(false, SceneRenderer.ANIMATION_CPU, SceneRenderer.SPRITE_POINTS);
+
+        GLCounters frame = runFrames(false);
+
+        assertEquals(2, frame.drawCalls);
+        assertEquals(0, frame.bytesUploaded);
+        assertEquals(0, frame.bufferBinds);
+    }
+
+    @Test
+    public void upscaledFramesAddOnePass() throws IOException
+    {
+        setUp(true, SceneRenderer.ANIMATION_CPU, SceneRenderer.SPRITE_POINTS);
+
+        GLCounters frame = runFrames(true);
+
+        assertEquals(3, frame.drawCalls);
+        assertEquals(particleManager.getActiveFloatCount() * 4L, frame.bytesUploaded);
+    }
+
+    private void setUp(boolean useVbo, int animationMode, int spriteMode) throws IOException
+    {
+        recording = new RecordingGL();
+        counting = new CountingGL(recording);
+        StateCacheGL gl = new StateCacheGL(counting);
+        GLResourceManager resources = new GLResourceManager(gl);
+        PackedScene scene = TestScene.load();
+
+        particleManager = new ParticleManager(scene);
+        particleManager.setTouchViewport(SURFACE_WIDTH, SURFACE_HEIGHT);
+        sceneRenderer = new SceneRenderer(gl, resources, particleManager, scene.getBackgroundMesh(), useVbo);
+
+        // Names only, RecordingGL accepts any program and buffer
+        int[] ids = new int[4];
+        gl.glGenBuffers(2, ids, 0);
+        gl.glGenTextures(2, ids, 2);
+
+        sceneRenderer.createBuffers();
+        sceneRenderer.setBackground(gl.glCreateProgram(), ids[0], ids[1]);
+        sceneRenderer.setParticleTexture(ids[2]);
+        sceneRenderer.setBlitProgram(gl.glCreateProgram());
+        particleProgramId = gl.glCreateProgram();
+        sceneRenderer.setParticleProgram(particleProgramId, animationMode, spriteMode);
+        sceneRenderer.setSurfaceSize(SURFACE_WIDTH, SURFACE_HEIGHT);
+        offscreenTextureId = ids[3];
+    }
+
+    private float lastUniform(int location)
+    {
+        float value = Float.NaN;
+
+        for (RecordingGL.Call call : recording.getCalls())
+        {
+            if (call.name.equals("glUniform1f") && (Integer) call.args[0] == location)
+            {
+                value = (Float) call.args[1];
+            }
+        }
+
+        return value;
+    }
+
+    // Checks every measured frame against the budget and returns the last one
+    private GLCounters runFrames(boolean upscale)
+    {
+        long frameNanos = 0;
+        int maxCalls = MAX_CALLS + (upscale ? MAX_UPSCALE_CALLS : 0);
+        int maxStateChanges = MAX_STATE_CHANGES + (upscale ? MAX_UPSCALE_STATE_CHANGES : 0);
+
+        for (int frame = 0; frame < WARMUP_FRAMES + MEASURED_FRAMES; frame++)
+        {
+            frameNanos += FRAME_NANOS;
+            counting.beginFrame();
+
+            if (upscale)
+            {
+                sceneRenderer.setRenderTarget(SURFACE_WIDTH / 2, SURFACE_HEIGHT / 2, 1.0f);
+            }
+            else
+            {
+                sceneRenderer.setRenderTarget(SURFACE_WIDTH, SURFACE_HEIGHT, 2.0f);
+            }
+
+            sceneRenderer.applyParticleCount(particleManager.getParticleCount(), 1.0f);
+            sceneRenderer.drawScene(frameNanos, 1, 0.5f);
+
+            if (upscale)
+            {
+                sceneRenderer.drawUpscale(offscreenTextureId, SURFACE_WIDTH, SURFACE_HEIGHT);
+            }
+
+            if (frame < WARMUP_FRAMES)
+            {
+                continue;
+            }
+
+            GLCounters counters = counting.getFrame();
+            String at = "frame " + frame + ": ";
+
+            assertTrue(at + counters.calls + " calls", counters.calls <= maxCalls);
+            assertTrue(at + counters.stateChanges + " state changes", counters.stateChanges <= maxStateChanges);
+            assertTrue(at + counters.bufferBinds + " buffer binds", counters.bufferBinds <= MAX_BUFFER_BINDS);
+            assertTrue(at + counters.uniformWrites + " uniform writes", counters.uniformWrites <= MAX_UNIFORM_WRITES);
+            assertEquals(at + "program switches", upscale ? 3 : 2, counters.programSwitches);
+            assertEquals(at + "queries", 0, counters.queries);
+        }
+
+        counting.beginFrame();
+
+        return counting.getLastFrame();
+    }
+}
@@ -0,0 +1,99 @@
+package com.android.phasebeam;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+// A finger must never stay pressed, whatever the queue had to drop on the way
+public class TouchQueueTest
+{
+    private static final long FRAME_NANOS = 16666667L;
+
+    // Past the release fade but well short of the staleness timeout, so only a delivered release lets go
+    private static final int FADE_FRAMES = 30;
+    private static final int STALE_FRAMES = 90;
+
+    @Test
+    public void releaseSurvivesFullRing()
+    {
+        TouchQueue queue = new TouchQueue();
+        TouchField field = newField();
+
+        // A move alone presses the finger, so the ring holds nothing but moves
+        while (queue.offer(TouchQueue.ACTION_MOVE, 0, 50.0f, 50.0f))
+        {
+        }
+
+        assertTrue(queue.offer(TouchQueue.ACTION_UP, 0, 50.0f, 50.0f));
+
+        assertFalse(settle(queue, field, FADE_FRAMES));
+    }
+
+    @Test
+    public void releaseSurvivesRingWithoutMoves()
+    {
+        TouchQueue queue = new TouchQueue();
+        TouchField field = newField();
+
+        for (int i = 0; queue.offer(TouchQueue.ACTION_DOWN, i % 2, 50.0f, 50.0f); i++)
+        {
+        }
+
+        queue.offer(TouchQueue.ACTION_UP, 0, 50.0f, 50.0f);
+        queue.offer(TouchQueue.ACTION_UP, 1, 50.0f, 50.0f);
+
+        assertFalse(settle(queue, field, FADE_FRAMES));
+    }
+
+    @Test
+    public void cancelAllReleasesEveryPointer()
+    {
+        TouchQueue queue = new TouchQueue();
+        TouchField field = newField();
+
+        queue.offer(TouchQueue.ACTION_DOWN, 0, 50.0f, 50.0f);
+        queue.offer(TouchQueue.ACTION_DOWN, 1, 20.0f, 80.0f);
+        queue.drainTo(field);
+        assertTrue(field.update());
+
+        queue.offer(TouchQueue.ACTION_CANCEL_ALL, 0, 0.0f, 0.0f);
+        queue.drainTo(field);
+        assertFalse(field.update());
+    }
+
+    @Test
+    public void stalePointerIsReleased()
+    {
+        TouchQueue queue = new TouchQueue();
+        TouchField field = newField();
+
+        queue.offer(TouchQueue.ACTION_DOWN, 0, 50.0f, 50.0f);
+
+        assertTrue(settle(queue, field, FADE_FRAMES));
+        assertFalse(settle(queue, field, STALE_FRAMES));
+    }
+
+    private long frameNanos;
+
+    private TouchField newField()
+    {
+        TouchField field = new TouchField();
+        field.setViewport(100, 100);
+        return field;
+    }
+
+    // Runs frames without new input and returns whether any finger still pushes
+    private boolean settle(TouchQueue queue, TouchField field, int frames)
+    {
+        for (int frame = 0; frame < frames; frame++)
+        {
+            frameNanos += FRAME_NANOS;
+            field.setFrameTime(frameNanos);
+            queue.drainTo(field);
+            field.update();
+        }
+
+        return field.isActive();
+    }
+}
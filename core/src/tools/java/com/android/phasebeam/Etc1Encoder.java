@@ -0,0 +1,245 @@
+package com.android.phasebeam;
+
+// ETC1 block compressor, ETC1 data is also valid ETC2 RGB8 so one encode serves both ES 2 and ES 3
+public final class Etc1Encoder
+{
+    public static final int BLOCK_BYTES = 8;
+
+    // Intensity modifier tables from the OES_compressed_ETC1_RGB8_texture spec
+    private static final int[][] MODIFIER_TABLES = {
+            {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}
+    };
+
+    private Etc1Encoder() {}
+
+    public static int encodedSize(int width, int height)
+    {
+        return ((width + 3) / 4) * ((height + 3) / 4) * BLOCK_BYTES;
+    }
+
+    // Pixels are packed 0xRRGGBB rows, edge blocks repeat the last row and column
+    public static byte[] encode(int[] pixels, int width, int height)
+    {
+        byte[] output = new byte[encodedSize(width, height)];
+        int[] block = new int[16];
+        int offset = 0;
+
+        for (int blockY = 0; blockY < height; blockY += 4)
+        {
+            for (int blockX = 0; blockX < width; blockX += 4)
+            {
+                for (int y = 0; y < 4; y++)
+                {
+                    for (int x = 0; x < 4; x++)
+                    {
+                        int sourceX = Math.min(blockX + x, width - 1);
+                        int sourceY = Math.min(blockY + y, height - 1);
+                        block[x * 4 + y] = pixels[sourceY * width + sourceX];
+                    }
+                }
+
+                long encoded = encodeBlock(block);
+
+                for (int i = 0; i < BLOCK_BYTES; i++)
+                {
+                    output[offset++] = (byte) (encoded >>> (56 - i * 8));
+                }
+            }
+        }
+
+        return output;
+    }
+
+    // The block is indexed column major (x * 4 + y), matching the pixel index bits
+    static long encodeBlock(int[] block)
+    {
+        long bestBlock = 0;
+        long bestError = Long.MAX_VALUE;
+        int[] indices = new int[16];
+        int[] bestIndices = new int[16];
+
+        for (int flip = 0; flip < 2; flip++)
+        {
+            float[] average0 = averageColor(block, flip, 0);
+            float[] average1 = averageColor(block, flip, 1);
+
+            for (int differential = 1; differential >= 0; differential--)
+            {
+                int[] base0 = new int[3];
+                int[] base1 = new int[3];
+                long header = 0;
+                boolean representable = true;
+
+                for (int c = 0; c < 3; c++)
+                {
+                    int shift = 59 - c * 8;
+
+                    if (differential == 1)
+                    {
+                        int quantized0 = quantize(average0[c], 31);
+                        int quantized1 = quantize(average1[c], 31);
+                        int delta = quantized1 - quantized0;
+
+                        if (delta < -4 || delta > 3)
+                        {
+                            representable = false;
+                            break;
+                        }
+
+                        base0[c] = expand5(quantized0);
+                        base1[c] = expand5(quantized1);
+                        header |= (long) quantized0 << shift;
+                        header |= (long) (delta & 0x7) << (shift - 3);
+                    }
+                    else
+                    {
+                        int quantized0 = quantize(average0[c], 15);
+                        int quantized1 = quantize(average1[c], 15);
+
+                        base0[c] = quantized0 * 17;
+                        base1[c] = quantized1 * 17;
+                        header |= (long) quantized0 << (shift + 1);
+                        header |= (long) quantized1 << (shift - 3);
+                    }
+                }
+
+                if (!representable)
+                {
+                    continue;
+                }
+
+                int table0 = bestTable(block, flip, 0, base0, indices);
+                int table1 = bestTable(block, flip, 1, base1, indices);
+                long error = subBlockError(block, flip, 0, base0, table0, indices)
+                        + subBlockError(block, flip, 1, base1, table1, indices);
+
+                if (error < bestError)
+                {
+                    bestError = error;
+                    System.arraycopy(indices, 0, bestIndices, 0, 16);
+                    bestBlock = header
+                            | (long) table0 << 37
+                            | (long) table1 << 34
+                            | (long) differential << 33
+                            | (long) flip << 32;
+                }
+            }
+        }
+
+        for (int i = 0; i < 16; i++)
+        {
+            bestBlock |= (long) (bestIndices[i] >> 1) << (16 + i);
+            bestBlock |= (long) (bestIndices[i] & 1) << i;
+        }
+
+        return bestBlock;
+    }
+
+    private static boolean inSubBlock(int pixel, int flip, int subBlock)
+    {
+        int x = pixel / 4;
+        int y = pixel % 4;
+
+        return (flip == 0 ? x / 2 : y / 2) == subBlock;
+    }
+
+    private static float[] averageColor(int[] block, int flip, int subBlock)
+    {
+        float[] average = new float[3];
+
+        for (int i = 0; i < 16; i++)
+        {
+            if (inSubBlock(i, flip, subBlock))
+            {
+                average[0] += (block[i] >> 16) & 0xFF;
+                average[1] += (block[i] >> 8) & 0xFF;
+                average[2] += block[i] & 0xFF;
+            }
+        }
+
+        for (int c = 0; c < 3; c++)
+        {
+            average[c] /= 8.0f;
+        }
+
+        return average;
+    }
+
+    private static int bestTable(int[] block, int flip, int subBlock, int[] base, int[] indices)
+    {
+        int bestTable = 0;
+        long bestError = Long.MAX_VALUE;
+
+        for (int table = 0; table < MODIFIER_TABLES.length; table++)
+        {
+            long error = subBlockError(block, flip, subBlock, base, table, indices);
+
+            if (error < bestError)
+            {
+                bestError = error;
+                bestTable = table;
+            }
+        }
+
+        return bestTable;
+    }
+
+    // Picks the best modifier per pixel, writes the indices and returns the squared error
+    private static long subBlockError(int[] block, int flip, int subBlock, int[] base, int table, int[] indices)
+    {
+        long error = 0;
+
+        for (int i = 0; i < 16; i++)
+        {
+            if (!inSubBlock(i, flip, subBlock))
+            {
+                continue;
+            }
+
+            int bestIndex = 0;
+            int bestPixelError = Integer.MAX_VALUE;
+
+            for (int index = 0; index < 4; index++)
+            {
+                int modifier = modifier(table, index);
+                int pixelError = 0;
+
+                for (int c = 0; c < 3; c++)
+                {
+                    int value = Math.max(0, Math.min(255, base[c] + modifier));
+                    int difference = value - ((block[i] >> (16 - c * 8)) & 0xFF);
+                    pixelError += difference * difference;
+                }
+
+                if (pixelError < bestPixelError)
+                {
+                    bestPixelError = pixelError;
+                    bestIndex = index;
+                }
+            }
+
+            indices[i] = bestIndex;
+            error += bestPixelError;
+        }
+
+        return error;
+    }
+
+    // Index bits 0 and 1 select the small and large positive modifier, 2 and 3 their negatives
+    private static int modifier(int table, int index)
+    {
+        int magnitude = MODIFIER_TABLES[table][index & 1];
+
+        return index < 2 ? magnitude : -magnitude;
+    }
+
+    private static int quantize(float value, int max)
+    {
+        return Math.max(0, Math.min(max, Math.round(value * max / 255.0f)));
+    }
+
+    private static int expand5(int value)
+    {
+        return (value << 3) | (value >> 2);
+    }
+}
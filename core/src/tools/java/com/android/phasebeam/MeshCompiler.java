@@ -0,0 +1,122 @@
+package com.android.phasebeam;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Build step used by SceneCompiler: turns expanded background triangles into an indexed, quantized PackedMesh
+public final class MeshCompiler
+{
+    // X, Y, R, G, B per source vertex
+    private static final int SOURCE_STRIDE = 5;
+
+    private MeshCompiler() {}
+
+    // Source is x, y, r, g, b per vertex, three vertices per triangle
+    public static byte[] compile(float[] source)
+    {
+        int sourceVertexCount = source.length / SOURCE_STRIDE;
+
+        // Exact duplicates collapse into one vertex
+        List<float[]> vertices = new ArrayList<float[]>();
+        HashMap<String, Integer> vertexIndices = new HashMap<String, Integer>();
+        int[] indices = new int[sourceVertexCount];
+
+        for (int i = 0; i < sourceVertexCount; i++)
+        {
+            float[] vertex = new float[SOURCE_STRIDE];
+            System.arraycopy(source, i * SOURCE_STRIDE, vertex, 0, SOURCE_STRIDE);
+
+            String key = Arrays.toString(vertex);
+            Integer index = vertexIndices.get(key);
+
+            if (index == null)
+            {
+                index = vertices.size();
+                vertexIndices.put(key, index);
+                vertices.add(vertex);
+            }
+
+            indices[i] = index;
+        }
+
+        if (vertices.size() > 0xFFFF)
+        {
+            throw new IllegalStateException("Too many vertices for GL_UNSIGNED_SHORT indices: " + vertices.size());
+        }
+
+        return pack(vertices, indices);
+    }
+
+    // Triangles keep the source order, which the background is authored in already. Vertices are renumbered in
+    // order of first use so fetches walk the buffer forwards
+    private static byte[] pack(List<float[]> vertices, int[] indices)
+    {
+        int[] remap = new int[vertices.size()];
+        Arrays.fill(remap, -1);
+        List<float[]> orderedVertices = new ArrayList<float[]>();
+
+        for (int i = 0; i < indices.length; i++)
+        {
+            if (remap[indices[i]] < 0)
+            {
+                remap[indices[i]] = orderedVertices.size();
+                orderedVertices.add(vertices.get(indices[i]));
+            }
+
+            indices[i] = remap[indices[i]];
+        }
+
+        float positionScaleX = 0.0f;
+        float positionScaleY = 0.0f;
+        float colorScale = 0.0f;
+
+        for (float[] vertex : orderedVertices)
+        {
+            positionScaleX = Math.max(positionScaleX, Math.abs(vertex[0]));
+            positionScaleY = Math.max(positionScaleY, Math.abs(vertex[1]));
+            colorScale = Math.max(colorScale, Math.max(vertex[2], Math.max(vertex[3], vertex[4])));
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(PackedMesh.HEADER_SIZE
+                + orderedVertices.size() * PackedMesh.VERTEX_STRIDE + indices.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+
+        data.putInt(PackedMesh.MAGIC);
+        data.putInt(PackedMesh.VERSION);
+        data.putInt(orderedVertices.size());
+        data.putInt(indices.length);
+        data.putFloat(positionScaleX);
+        data.putFloat(positionScaleY);
+        data.putFloat(colorScale);
+
+        for (float[] vertex : orderedVertices)
+        {
+            data.putShort(toNormalizedShort(vertex[0] / positionScaleX));
+            data.putShort(toNormalizedShort(vertex[1] / positionScaleY));
+            data.put(toNormalizedByte(vertex[2] / colorScale));
+            data.put(toNormalizedByte(vertex[3] / colorScale));
+            data.put(toNormalizedByte(vertex[4] / colorScale));
+            data.put((byte) 0);
+        }
+
+        for (int index : indices)
+        {
+            data.putShort((short) index);
+        }
+
+        return data.array();
+    }
+
+    private static short toNormalizedShort(float value)
+    {
+        return (short) Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * 32767.0f);
+    }
+
+    private static byte toNormalizedByte(float value)
+    {
+        return (byte) Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 255.0f);
+    }
+}
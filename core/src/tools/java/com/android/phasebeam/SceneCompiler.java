@@ -0,0 +1,394 @@
+package com.android.phasebeam;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+// Build step: parses scene descriptions into PackedScene assets, so the device never reads text
+// Usage: SceneCompiler <output dir> <name.scene>...
+public final class SceneCompiler
+{
+    private static final String[] EMITTER_NAMES = {"dot", "beam"};
+
+    // X, Y, R, G, B per background vertex
+    private static final int BACKGROUND_STRIDE = 5;
+
+    private SceneCompiler() {}
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            throw new IllegalArgumentException("Usage: SceneCompiler <output dir> <name.scene>...");
+        }
+
+        File outputDir = new File(args[0]);
+        outputDir.mkdirs();
+
+        for (int i = 1; i < args.length; i++)
+        {
+            File source = new File(args[i]);
+            String name = source.getName().replaceFirst("\\.scene$", "");
+            byte[] scene = compile(new FileReader(source), source.getName());
+
+            PackedMesh background = PackedScene.read(ByteBuffer.wrap(scene)).getBackgroundMesh();
+
+            System.out.println("SceneCompiler: " + source.getName() + " -> " + scene.length + " bytes, background "
+                    + background.vertexCount + " vertices, " + background.indexCount + " indices");
+
+            OutputStream stream = new FileOutputStream(new File(outputDir, name + ".pbscene"));
+
+            try
+            {
+                stream.write(scene);
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+    }
+
+    private static class EmitterSource
+    {
+        float[] spawnX;
+        float[] spawnY;
+        float xSpeed = Float.NaN;
+        float ySpeed = Float.NaN;
+        float yBound = Float.NaN;
+        int period;
+        final List<float[]> bands = new ArrayList<float[]>();
+    }
+
+    // Also used by the benchmarks, which run without the app's compiled assets
+    public static byte[] compile(Reader reader, String sourceName) throws IOException
+    {
+        BufferedReader lines = new BufferedReader(reader);
+        EmitterSource[] emitters = new EmitterSource[PackedScene.EMITTER_COUNT];
+        List<Float> background = new ArrayList<Float>();
+        int pairCount = 0;
+        float particleParallax = 0.0f;
+        float backgroundParallax = 0.0f;
+
+        // Blocks are "emitter <name>" or "background" up to the next "end"
+        EmitterSource emitter = null;
+        boolean inBackground = false;
+        int lineNumber = 0;
+
+        try
+        {
+            for (String line = lines.readLine(); line != null; line = lines.readLine())
+            {
+                lineNumber++;
+
+                int comment = line.indexOf('#');
+                String[] tokens = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+
+                if (tokens[0].isEmpty())
+                {
+                    continue;
+                }
+
+                if (tokens[0].equals("end") && (emitter != null || inBackground))
+                {
+                    emitter = null;
+                    inBackground = false;
+                }
+                else if (inBackground)
+                {
+                    if (tokens.length != BACKGROUND_STRIDE)
+                    {
+                        throw new IllegalArgumentException("Expected x, y, r, g and b per background vertex");
+                    }
+
+                    for (String token : tokens)
+                    {
+                        background.add(Float.parseFloat(token));
+                    }
+                }
+                else if (emitter != null)
+                {
+                    parseEmitterLine(emitter, tokens);
+                }
+                else if (tokens[0].equals("pairs"))
+                {
+                    expect(tokens, 2);
+                    pairCount = Integer.parseInt(tokens[1]);
+                }
+                else if (tokens[0].equals("parallax") && tokens.length == 3 && tokens[1].equals("particles"))
+                {
+                    particleParallax = Float.parseFloat(tokens[2]);
+                }
+                else if (tokens[0].equals("parallax") && tokens.length == 3 && tokens[1].equals("background"))
+                {
+                    backgroundParallax = Float.parseFloat(tokens[2]);
+                }
+                else if (tokens[0].equals("emitter"))
+                {
+                    expect(tokens, 2);
+                    int index = emitterIndex(tokens[1]);
+
+                    if (emitters[index] != null)
+                    {
+                        throw new IllegalArgumentException("Duplicate emitter " + tokens[1]);
+                    }
+
+                    emitter = emitters[index] = new EmitterSource();
+                }
+                else if (tokens[0].equals("background") && tokens.length == 1)
+                {
+                    if (!background.isEmpty())
+                    {
+                        throw new IllegalArgumentException("Duplicate background");
+                    }
+
+                    inBackground = true;
+                }
+                else
+                {
+                    throw new IllegalArgumentException("Unknown statement " + tokens[0]);
+                }
+            }
+
+            if (emitter != null || inBackground)
+            {
+                throw new IllegalArgumentException("Missing end");
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException(sourceName + ":" + lineNumber + ": " + e.getMessage(), e);
+        }
+        finally
+        {
+            lines.close();
+        }
+
+        validate(emitters, background, pairCount, sourceName);
+
+        float[] backgroundData = new float[background.size()];
+
+        for (int i = 0; i < backgroundData.length; i++)
+        {
+            backgroundData[i] = background.get(i);
+        }
+
+        return pack(emitters, MeshCompiler.compile(backgroundData), pairCount, particleParallax, backgroundParallax);
+    }
+
+    private static void parseEmitterLine(EmitterSource emitter, String[] tokens)
+    {
+        String key = tokens[0];
+
+        if (key.equals("spawn-x") || key.equals("spawn-y"))
+        {
+            expect(tokens, 3);
+            float[] range = {Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2])};
+
+            if (key.equals("spawn-x"))
+            {
+                emitter.spawnX = range;
+            }
+            else
+            {
+                emitter.spawnY = range;
+            }
+        }
+        else if (key.equals("speed-x"))
+        {
+            expect(tokens, 2);
+            emitter.xSpeed = Float.parseFloat(tokens[1]);
+        }
+        else if (key.equals("speed-y"))
+        {
+            expect(tokens, 2);
+            emitter.ySpeed = Float.parseFloat(tokens[1]);
+        }
+        else if (key.equals("bound-y"))
+        {
+            expect(tokens, 2);
+            emitter.yBound = Float.parseFloat(tokens[1]);
+        }
+        else if (key.equals("period"))
+        {
+            expect(tokens, 2);
+            emitter.period = Integer.parseInt(tokens[1]);
+        }
+        else if (key.equals("band"))
+        {
+            emitter.bands.add(parseBand(tokens));
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown emitter property " + key);
+        }
+    }
+
+    // band <from> <to> z <min> [max] [x <x>]
+    private static float[] parseBand(String[] tokens)
+    {
+        if (tokens.length < 5 || !tokens[3].equals("z"))
+        {
+            throw new IllegalArgumentException("Expected band <from> <to> z <min> [max] [x <x>]");
+        }
+
+        float[] band = new float[5];
+        band[0] = Integer.parseInt(tokens[1]);
+        band[1] = Integer.parseInt(tokens[2]);
+        band[2] = Float.parseFloat(tokens[4]);
+        band[3] = band[2];
+        band[4] = Float.NaN;
+
+        int next = 5;
+
+        if (next < tokens.length && !tokens[next].equals("x"))
+        {
+            band[3] = Float.parseFloat(tokens[next++]);
+        }
+
+        if (next < tokens.length)
+        {
+            if (!tokens[next].equals("x") || next + 2 != tokens.length)
+            {
+                throw new IllegalArgumentException("Expected band <from> <to> z <min> [max] [x <x>]");
+            }
+
+            band[4] = Float.parseFloat(tokens[next + 1]);
+        }
+
+        if (band[0] < 0 || band[1] <= band[0] || band[3] < band[2])
+        {
+            throw new IllegalArgumentException("Empty band");
+        }
+
+        return band;
+    }
+
+    private static void validate(EmitterSource[] emitters, List<Float> background, int pairCount, String sourceName)
+    {
+        if (pairCount <= 0)
+        {
+            throw new IllegalArgumentException(sourceName + ": pairs must be positive");
+        }
+
+        for (int i = 0; i < emitters.length; i++)
+        {
+            EmitterSource emitter = emitters[i];
+            String name = sourceName + ": emitter " + EMITTER_NAMES[i];
+
+            if (emitter == null)
+            {
+                throw new IllegalArgumentException(name + " is missing");
+            }
+
+            if (emitter.spawnX == null || emitter.spawnY == null || Float.isNaN(emitter.xSpeed)
+                    || Float.isNaN(emitter.ySpeed) || Float.isNaN(emitter.yBound) || emitter.period <= 0)
+            {
+                throw new IllegalArgumentException(name + " needs spawn-x, spawn-y, speed-x, speed-y, bound-y and period");
+            }
+
+            // Every position has to land in some band, PackedScene.Emitter.bandAt doesn't check
+            for (int position = 0; position < emitter.period; position++)
+            {
+                boolean covered = false;
+
+                for (float[] band : emitter.bands)
+                {
+                    covered |= position >= band[0] && position < band[1];
+                }
+
+                if (!covered)
+                {
+                    throw new IllegalArgumentException(name + " has no band for position " + position);
+                }
+            }
+        }
+
+        if (background.isEmpty() || background.size() % (BACKGROUND_STRIDE * 3) != 0)
+        {
+            throw new IllegalArgumentException(sourceName + ": background needs whole triangles");
+        }
+    }
+
+    private static byte[] pack(EmitterSource[] emitters, byte[] mesh, int pairCount, float particleParallax,
+                               float backgroundParallax)
+    {
+        int[] emitterOffsets = new int[emitters.length];
+        int size = PackedScene.HEADER_SIZE;
+
+        for (int i = 0; i < emitters.length; i++)
+        {
+            emitterOffsets[i] = size;
+            size += PackedScene.EMITTER_SIZE + emitters[i].bands.size() * PackedScene.BAND_SIZE;
+        }
+
+        int meshOffset = size;
+        ByteBuffer data = ByteBuffer.allocate(meshOffset + mesh.length).order(ByteOrder.LITTLE_ENDIAN);
+
+        data.putInt(PackedScene.MAGIC);
+        data.putInt(PackedScene.VERSION);
+        data.putInt(pairCount);
+        data.putFloat(particleParallax);
+        data.putFloat(backgroundParallax);
+        data.putInt(emitterOffsets[PackedScene.EMITTER_DOT]);
+        data.putInt(emitterOffsets[PackedScene.EMITTER_BEAM]);
+        data.putInt(meshOffset);
+        data.putInt(mesh.length);
+
+        for (EmitterSource emitter : emitters)
+        {
+            data.putFloat(emitter.spawnX[0]);
+            data.putFloat(emitter.spawnX[1]);
+            data.putFloat(emitter.spawnY[0]);
+            data.putFloat(emitter.spawnY[1]);
+            data.putFloat(emitter.xSpeed);
+            data.putFloat(emitter.ySpeed);
+            data.putFloat(emitter.yBound);
+            data.putInt(emitter.period);
+            data.putInt(emitter.bands.size());
+
+            for (float[] band : emitter.bands)
+            {
+                data.putInt((int) band[0]);
+                data.putInt((int) band[1]);
+                data.putFloat(band[2]);
+                data.putFloat(band[3]);
+                data.putFloat(band[4]);
+            }
+        }
+
+        // Everything before is whole words, so the mesh header stays 4-byte aligned in the mapping
+        data.put(mesh);
+
+        return data.array();
+    }
+
+    private static int emitterIndex(String name)
+    {
+        for (int i = 0; i < EMITTER_NAMES.length; i++)
+        {
+            if (EMITTER_NAMES[i].equals(name))
+            {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown emitter " + name + ", expected dot or beam");
+    }
+
+    private static void expect(String[] tokens, int count)
+    {
+        if (tokens.length != count)
+        {
+            throw new IllegalArgumentException("Expected " + (count - 1) + " values after " + tokens[0]);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.android.phasebeam;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.imageio.ImageIO;
+
+// Build step: packs sprite PNGs into one atlas row and writes it as a mipmapped ETC1 KTX
+// Usage: SpriteAtlasCompiler <tile size> <output.ktx> <sprite.png>...
+public final class SpriteAtlasCompiler
+{
+    private static final byte[] KTX_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int KTX_ENDIANNESS = 0x04030201;
+    private static final int GL_ETC1_RGB8_OES = 0x8D64;
+    private static final int GL_RGB = 0x1907;
+
+    private SpriteAtlasCompiler() {}
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3)
+        {
+            throw new IllegalArgumentException("Usage: SpriteAtlasCompiler <tile size> <output.ktx> <sprite.png>...");
+        }
+
+        int tileSize = Integer.parseInt(args[0]);
+        File output = new File(args[1]);
+        int spriteCount = args.length - 2;
+
+        // Same layout as the runtime Canvas fallback, every sprite scaled into its own tile
+        BufferedImage atlas = new BufferedImage(tileSize * spriteCount, tileSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = atlas.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        for (int i = 0; i < spriteCount; i++)
+        {
+            BufferedImage sprite = ImageIO.read(new File(args[i + 2]));
+
+            if (sprite == null)
+            {
+                throw new IOException("Unreadable sprite: " + args[i + 2]);
+            }
+
+            graphics.drawImage(sprite, i * tileSize, 0, tileSize, tileSize, null);
+        }
+
+        graphics.dispose();
+
+        int width = atlas.getWidth();
+        int height = atlas.getHeight();
+        int[] pixels = atlas.getRGB(0, 0, width, height, null, 0, width);
+
+        output.getParentFile().mkdirs();
+        writeKtx(output, pixels, width, height);
+    }
+
+    // Full chain down to 1x1, ES 2 treats a texture with a partial chain as incomplete
+    private static void writeKtx(File output, int[] pixels, int width, int height) throws IOException
+    {
+        int levelCount = 1;
+
+        for (int size = Math.max(width, height); size > 1; size /= 2)
+        {
+            levelCount++;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(13 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(KTX_ENDIANNESS);
+        header.putInt(0); // glType, compressed
+        header.putInt(1); // glTypeSize
+        header.putInt(0); // glFormat, compressed
+        header.putInt(GL_ETC1_RGB8_OES);
+        header.putInt(GL_RGB);
+        header.putInt(width);
+        header.putInt(height);
+        header.putInt(0); // pixelDepth
+        header.putInt(0); // numberOfArrayElements
+        header.putInt(1); // numberOfFaces
+        header.putInt(levelCount);
+        header.putInt(0); // bytesOfKeyValueData
+
+        DataOutputStream stream = new DataOutputStream(new FileOutputStream(output));
+
+        try
+        {
+            stream.write(KTX_IDENTIFIER);
+            stream.write(header.array());
+
+            ByteBuffer imageSize = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int level = 0; level < levelCount; level++)
+            {
+                byte[] encoded = Etc1Encoder.encode(pixels, width, height);
+
+                imageSize.clear();
+                imageSize.putInt(encoded.length);
+                stream.write(imageSize.array());
+
+                // ETC1 blocks are 8 bytes, so every level already ends 4 byte aligned as KTX requires
+                stream.write(encoded);
+
+                int nextWidth = Math.max(1, width / 2);
+                int nextHeight = Math.max(1, height / 2);
+                pixels = downsample(pixels, width, height, nextWidth, nextHeight);
+                width = nextWidth;
+                height = nextHeight;
+            }
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    // 2x2 box filter, tiles are powers of two so no tile bleeds into its neighbour until it is a single texel
+    private static int[] downsample(int[] pixels, int width, int height, int nextWidth, int nextHeight)
+    {
+        int[] result = new int[nextWidth * nextHeight];
+        int stepX = width / nextWidth;
+        int stepY = height / nextHeight;
+
+        for (int y = 0; y < nextHeight; y++)
+        {
+            for (int x = 0; x < nextWidth; x++)
+            {
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+
+                for (int sampleY = 0; sampleY < stepY; sampleY++)
+                {
+                    for (int sampleX = 0; sampleX < stepX; sampleX++)
+                    {
+                        int pixel = pixels[(y * stepY + sampleY) * width + x * stepX + sampleX];
+                        red += (pixel >> 16) & 0xFF;
+                        green += (pixel >> 8) & 0xFF;
+                        blue += pixel & 0xFF;
+                    }
+                }
+
+                int samples = stepX * stepY;
+                result[y * nextWidth + x] = ((red + samples / 2) / samples) << 16
+                        | ((green + samples / 2) / samples) << 8
+                        | ((blue + samples / 2) / samples);
+            }
+        }
+
+        return result;
+    }
+}